@@ -0,0 +1,88 @@
+import blocksworld.bench.Fixture;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+// Implements the benchmark fixture on the solver classes, which it can reach from the default package
+public class ProblemFixture implements Fixture {
+    private final String filename;
+    private final Problem problem;
+    private final State init;
+    private final State copy; // Equal to init, but a different object
+    private final Move move; // First move of init
+    private final State child; // Child of init reached by move
+    private final State scratch; // Working copy of init for makeMove and unmakeMove
+    private final ArrayList<State> path = new ArrayList<>(); // States of the domain planner's plan, from init on
+
+    public ProblemFixture(String filename) {
+        this.filename = filename;
+        this.problem = new PDDLParser(filename).parseInputFile();
+        this.init = problem.getInit();
+        this.copy = new State(init.getState().clone());
+        this.move = init.generateMoves(-1).get(0);
+        this.child = init.applyMove(move);
+        this.scratch = init.copy();
+        init.setH(problem.Heuristic(init)); // Heuristic(State, Move) derives the heuristic of a child from it
+        path.add(init);
+        for (Move step : new DomainPlanner(problem).plan()) {
+            path.add(path.get(path.size() - 1).applyMove(step));
+        }
+        try {
+            Files.createDirectories(Paths.get("Output"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int stateHashCode() {
+        return init.hashCode();
+    }
+
+    @Override
+    public boolean stateEquals() {
+        return init.equals(copy);
+    }
+
+    @Override
+    public Object generateMoves() {
+        return child.generateMoves(move.block());
+    }
+
+    @Override
+    public Object applyMove() {
+        return init.applyMove(move);
+    }
+
+    @Override
+    public long makeUnmakeMove() {
+        scratch.makeMove(move);
+        long fingerprint = scratch.fingerprint();
+        scratch.unmakeMove(move);
+        return fingerprint;
+    }
+
+    @Override
+    public int heuristic() {
+        return problem.Heuristic(init);
+    }
+
+    @Override
+    public int heuristicAfterMove() {
+        return problem.Heuristic(init, move);
+    }
+
+    @Override
+    public Object parseInputFile() {
+        return new PDDLParser(filename).parseInputFile();
+    }
+
+    @Override
+    public int parseOutputFile() {
+        PDDLParser.parseOutputFile(path, "benchmark-plan.txt", problem.getBlocks());
+        return path.size();
+    }
+}
@@ -0,0 +1,21 @@
+package blocksworld.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+    Entry point of benchmarks.jar: the JMH command line, with the GC profiler always added so allocation
+    regressions show up next to the throughput. Every JMH option still works, for example
+
+    java -jar benchmarks/target/benchmarks.jar HotPathBenchmarks.heuristic -p problem=probBLOCKS-60-0.pddl
+*/
+public class BenchmarkMain {
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build()).run();
+    }
+}
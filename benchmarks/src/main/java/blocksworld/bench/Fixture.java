@@ -0,0 +1,47 @@
+package blocksworld.bench;
+
+/*
+    The hot paths of the solver for one problem, as the benchmarks call them.
+
+    The solver lives in the default package, which classes in a named package cannot import, and JMH only
+    accepts benchmarks in a named package. ProblemFixture, in the default package, implements this interface
+    on top of the solver classes; every benchmark loads it once per trial, so a measured call is one
+    monomorphic interface call that the JIT inlines.
+*/
+public interface Fixture {
+    // Hashes the initial state
+    int stateHashCode();
+
+    // Compares the initial state with an equal copy of it
+    boolean stateEquals();
+
+    // Generates the pruned moves of the first child of the initial state, as the searches do for every expansion
+    Object generateMoves();
+
+    // Builds the first child of the initial state, as the searches with State objects do
+    Object applyMove();
+
+    // Makes and unmakes the first move on a working state, as the searches with a single state do
+    long makeUnmakeMove();
+
+    // Computes the heuristic of the initial state from scratch
+    int heuristic();
+
+    // Derives the heuristic of the first child from the initial state and the move, as every search does
+    int heuristicAfterMove();
+
+    // Parses the problem file
+    Object parseInputFile();
+
+    // Writes the plan of the domain planner from its states to Output/benchmark-plan.txt, as every search writes its plan
+    int parseOutputFile();
+
+    // Loads the problem file from Problems/, relative to the working directory
+    static Fixture load(String problem) {
+        try {
+            return (Fixture) Class.forName("ProblemFixture").getConstructor(String.class).newInstance(problem);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load the fixture for " + problem, e);
+        }
+    }
+}
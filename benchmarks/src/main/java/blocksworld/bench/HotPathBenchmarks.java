@@ -0,0 +1,78 @@
+package blocksworld.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Throughput of the hot paths of the searches, for problems of growing size from Problems/.
+
+    Run from the root of the repository, so the problem files are found:
+
+    java -jar benchmarks/target/benchmarks.jar
+
+    BenchmarkMain adds the GC profiler, so every result comes with its allocation rate
+    (gc.alloc.rate.norm, bytes per operation) next to the throughput.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotPathBenchmarks {
+    @Param({"probBLOCKS-10-0.pddl", "probBLOCKS-20-0.pddl", "probBLOCKS-40-0.pddl", "probBLOCKS-60-0.pddl"})
+    public String problem;
+
+    private Fixture fixture;
+
+    @Setup(Level.Trial)
+    public void load() {
+        fixture = Fixture.load(problem);
+    }
+
+    @Benchmark
+    public int stateHashCode() {
+        return fixture.stateHashCode();
+    }
+
+    @Benchmark
+    public boolean stateEquals() {
+        return fixture.stateEquals();
+    }
+
+    @Benchmark
+    public Object generateMoves() {
+        return fixture.generateMoves();
+    }
+
+    @Benchmark
+    public Object applyMove() {
+        return fixture.applyMove();
+    }
+
+    @Benchmark
+    public long makeUnmakeMove() {
+        return fixture.makeUnmakeMove();
+    }
+
+    @Benchmark
+    public int heuristic() {
+        return fixture.heuristic();
+    }
+
+    @Benchmark
+    public int heuristicAfterMove() {
+        return fixture.heuristicAfterMove();
+    }
+
+    @Benchmark
+    public Object parseInputFile() {
+        return fixture.parseInputFile();
+    }
+
+    @Benchmark
+    public int parseOutputFile() {
+        return fixture.parseOutputFile();
+    }
+}
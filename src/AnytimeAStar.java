@@ -0,0 +1,159 @@
+import java.util.*;
+
+/*
+    Anytime weighted A* in the style of ARA*.
+
+    The first round orders the open list by g + w * h with a large weight w, which finds a plan quickly.
+    Each later round lowers w by a fixed step and continues from where the previous round stopped
+    instead of starting over: the open list is kept and only re-sorted for the new weight, every state
+    keeps the best g found for it, and states whose g improved after they had been expanded in the
+    round are collected and put back into the open list for the next one. A round ends once the
+    incumbent plan is no longer than the smallest weighted f in the open list.
+
+    Every time a shorter plan is found it is written to the output file right away, so if the SIGAlarm
+    deadline stops the program, the best plan found so far is already on disk. Nodes that cannot lead
+    to a shorter plan than the incumbent, judged by Problem.lowerBound, are dropped, and so are nodes that
+    cannot stay within an upper bound given in advance (the plan length of the DomainPlanner).
+*/
+public class AnytimeAStar {
+    private final Problem problem;
+    private final String output;
+    private final double initialWeight;
+    private final double weightStep;
+    private final int upperBound; // Length of a plan known in advance, Integer.MAX_VALUE if there is none
+    private final Map<State, State> seen = new HashMap<>(); // Node with the best g for every state reached
+    private State incumbent; // Goal node of the best plan found so far
+    private final SearchContext context = SearchContext.current();
+    private final SearchStats stats = context.stats();
+    private long startTime;
+
+    public AnytimeAStar(Problem problem, String output, double initialWeight, double weightStep, int upperBound) {
+        this.problem = problem;
+        this.output = output;
+        this.initialWeight = initialWeight;
+        this.weightStep = weightStep;
+        this.upperBound = upperBound;
+    }
+
+    /**
+     * Runs rounds with decreasing weights until a round with weight 1 ends or there is nothing left to expand.
+     *
+     * @param path The best solution path found.
+     * @return True if a path is found, otherwise false.
+     */
+    public boolean search(ArrayList<State> path) {
+        startTime = System.currentTimeMillis();
+        State start = problem.getInit();
+        start.setG(0);
+        start.setH(problem.Heuristic(start));
+        seen.put(start, start);
+        List<State> open = new ArrayList<>(List.of(start));
+
+        for (double weight = initialWeight; !open.isEmpty(); weight = Math.max(1.0, weight - weightStep)) {
+            final double w = weight;
+            PriorityQueue<State> openList = new PriorityQueue<>(
+                    Comparator.comparingDouble((State s) -> s.getG() + w * s.getH()).thenComparingInt(State::getH));
+            for (State node : open) {
+                if (seen.get(node) == node && canImprove(node)) {
+                    openList.add(node); // Stale and hopeless nodes are dropped when the weight changes
+                }
+            }
+            List<State> inconsistent = improvePath(openList, w);
+            System.out.println("Weight " + w + " done after " + elapsed() + " seconds, open list: " + openList.size() + " states.");
+
+            open = new ArrayList<>(openList);
+            open.addAll(inconsistent);
+            if (w == 1.0) {
+                break;
+            }
+        }
+        if (incumbent == null) {
+            return false;
+        }
+        buildPath(incumbent, path);
+        return true;
+    }
+
+    /*
+    Expands nodes in weighted f order until the incumbent is at least as short as the best weighted f left.
+    Returns the nodes that were improved after being expanded in this round; they wait for the next round.
+    */
+    private List<State> improvePath(PriorityQueue<State> openList, double weight) {
+        Set<State> closed = new HashSet<>();
+        List<State> inconsistent = new ArrayList<>();
+
+        while (!openList.isEmpty()) {
+            State current = openList.peek();
+            if (incumbent != null && incumbent.getG() <= current.getG() + weight * current.getH()) {
+                break; // The incumbent is good enough for this weight
+            }
+            openList.poll();
+            if (seen.get(current) != current || !closed.add(current)) {
+                continue; // Stale copy of a state that was improved since, or already expanded this round
+            }
+            context.expand();
+            stats.layer(current.getG() + current.getH()); // Unweighted f
+            if (current.isGoal()) {
+                if (incumbent == null || current.getG() < incumbent.getG()) {
+                    incumbent = current;
+                    writePlan(weight);
+                }
+                continue;
+            }
+            long since = stats.clock();
+            List<Move> moves = current.generateMoves();
+            stats.generated(moves.size());
+            for (Move move : moves) {
+                State child = current.applyMove(move);
+                State known = seen.get(child);
+                if (known != null && known.getG() <= child.getG()) {
+                    stats.duplicate();
+                    continue; // Not a shorter way to a state we already reached
+                }
+                child.setH(problem.Heuristic(current, move));
+                if (!canImprove(child)) {
+                    continue;
+                }
+                seen.put(child, child);
+                if (closed.contains(child)) {
+                    inconsistent.add(child); // Already expanded this round, reconsider it in the next one
+                } else {
+                    openList.add(child);
+                }
+            }
+            stats.successorTime(since);
+            stats.open(openList.size());
+            stats.closed(seen.size());
+        }
+        return inconsistent;
+    }
+
+    // Checks whether a plan through the node could still be shorter than the incumbent and within the upper bound
+    private boolean canImprove(State node) {
+        if (incumbent == null && upperBound == Integer.MAX_VALUE) {
+            return true;
+        }
+        int bound = incumbent == null ? upperBound : Math.min(upperBound, incumbent.getG() - 1);
+        return node.getG() + problem.lowerBound(node) <= bound;
+    }
+
+    // Writes the incumbent plan to the output file as soon as it is found
+    private void writePlan(double weight) {
+        ArrayList<State> path = new ArrayList<>();
+        buildPath(incumbent, path);
+        PDDLParser.parseOutputFile(path, output, problem.getBlocks());
+        System.out.println("Plan with " + (path.size() - 1) + " moves written with weight " + weight
+                + " after " + elapsed() + " seconds.");
+    }
+
+    private static void buildPath(State node, ArrayList<State> path) {
+        for (State s = node; s != null; s = s.getParent()) {
+            path.add(s);
+        }
+        Collections.reverse(path);
+    }
+
+    private double elapsed() {
+        return (System.currentTimeMillis() - startTime) / 1000.0;
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+    Batch mode: solves every (problem, algorithm) pair of a matrix inside one JVM, for example
+
+    java -jar blocks-world.jar batch astar,best,domain "probBLOCKS-*.pddl" summary.csv --jobs=2 --timeout=30
+
+    The jobs run on a fixed pool of --jobs threads, so the JVM starts and the JIT warms up only once. Instead of
+    the SIGAlarm, which would end the whole process, every job gets its own SearchContext with a deadline of
+    --timeout seconds; a search that runs past it is stopped at its next expansion and the pool thread takes
+    the next job. A job that runs out of memory is recorded as such and the others go on.
+
+    Each job writes its plan to Output/<algorithm>-<problem>.txt and everything it prints to
+    Output/<algorithm>-<problem>.log, through the ThreadLog that System.out forwards to while the batch
+    runs. Every plan is then read back and replayed on its problem (Problem.checkPlan), so running all
+    algorithms on all problems checks every plan they return. The summary, with the time, plan length,
+    expanded nodes and peak heap of every job, goes to Output/<summary> as JSON if the name ends in .json
+    and as CSV otherwise. The peak heap is sampled every few milliseconds for the whole JVM, so with more
+    than one job at a time it includes the memory of the jobs running alongside.
+*/
+public class BatchRunner {
+    // Outcome of one job of the matrix
+    record JobResult(String problem, String algorithm, String status, double seconds, int moves, long expanded, long peakHeapBytes) {
+    }
+
+    private final List<String> algorithms;
+    private final List<String> problems;
+    private final String summary;
+    private final SearchOptions options;
+    private final Set<long[]> running = ConcurrentHashMap.newKeySet(); // Peak heap cell of every running job
+
+    public BatchRunner(List<String> algorithms, List<String> problems, String summary, SearchOptions options) {
+        this.algorithms = algorithms;
+        this.problems = problems;
+        this.summary = summary;
+        this.options = options;
+    }
+
+    /**
+     * Parses the batch arguments: algorithms separated by commas (or "all"), a glob of problem files in
+     * Problems/ (or "all"), the summary file name and the options.
+     *
+     * @param args The command-line arguments, starting with "batch".
+     */
+    public static void run(String[] args) {
+        List<String> algorithms = args[1].equals("all") ? Search.ALGORITHMS : List.of(args[1].split(","));
+        for (String algorithm : algorithms) {
+            if (!Search.ALGORITHMS.contains(algorithm)) {
+                throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+            }
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + (args[2].equals("all") ? "*.pddl" : args[2]));
+        List<String> problems = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get("Problems"))) {
+            for (Path file : files) {
+                if (matcher.matches(file.getFileName())) {
+                    problems.add(file.getFileName().toString());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        problems.sort(Comparator.comparingInt(BatchRunner::blockCount).thenComparing(Comparator.naturalOrder()));
+        new BatchRunner(algorithms, problems, args[3], SearchOptions.parse(args, 4)).runAll();
+    }
+
+    // Runs the whole matrix and writes the summary
+    public void runAll() {
+        boolean installed = ThreadLog.install();
+        PrintStream console = ThreadLog.console();
+        ExecutorService pool = Executors.newFixedThreadPool(options.getJobs());
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sampleHeap, 0, 5, TimeUnit.MILLISECONDS);
+
+        List<Future<JobResult>> futures = new ArrayList<>();
+        for (String problem : problems) {
+            for (String algorithm : algorithms) {
+                futures.add(pool.submit(() -> runJob(problem, algorithm)));
+            }
+        }
+        List<JobResult> results = new ArrayList<>();
+        try {
+            for (Future<JobResult> future : futures) {
+                JobResult result = future.get();
+                results.add(result);
+                console.printf("%-24s %-10s %-14s %8.3f s %6s moves %12d nodes %8.1f MB%n", result.problem(), result.algorithm(),
+                        result.status(), result.seconds(), result.moves() < 0 ? "-" : String.valueOf(result.moves()),
+                        result.expanded(), result.peakHeapBytes() / 1e6);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            sampler.shutdownNow();
+            if (installed) {
+                ThreadLog.uninstall();
+            }
+        }
+        writeSummary(results);
+        console.println("Summary of " + results.size() + " jobs written to Output/" + summary);
+        long invalid = results.stream().filter(result -> result.status().equals("invalid plan")).count();
+        if (invalid > 0) {
+            console.println(invalid + " plans do not solve their problem, see the logs of their jobs.");
+        }
+        if (options.isCache()) {
+            console.println("Plan cache: " + PlanCache.sharedIfUsed().summary() + ".");
+        }
+    }
+
+    // Solves one problem with one algorithm under its own deadline, sending its output to its log file
+    private JobResult runJob(String problem, String algorithm) {
+        String name = algorithm + "-" + problem.replace(".pddl", "");
+        SearchContext context = SearchContext.withTimeout(options.getTimeout());
+        long[] peak = new long[1];
+        raise(peak); // Jobs shorter than the sampling period still get one sample at the start and one at the end
+        running.add(peak);
+        context.bind();
+        long start = System.nanoTime();
+        String status;
+        int moves = -1;
+        try (PrintStream log = new PrintStream(new FileOutputStream("Output/" + name + ".log"), true)) {
+            ThreadLog.bind(log);
+            try {
+                Problem parsed = new PDDLParser(problem).parseInputFile();
+                moves = Search.SelectSearch(parsed, algorithm, name + ".txt", options);
+                status = moves < 0 ? "no plan" : checkPlan(parsed, name + ".txt", moves, log);
+            } catch (SearchCancelledException e) {
+                status = "timeout";
+            } catch (OutOfMemoryError e) {
+                status = "out of memory";
+            } catch (RuntimeException e) {
+                status = "error";
+                e.printStackTrace(log);
+            }
+            log.println("Status: " + status);
+        } catch (FileNotFoundException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            ThreadLog.unbind(null);
+            SearchContext.unbind();
+            running.remove(peak);
+            raise(peak);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        synchronized (peak) {
+            return new JobResult(problem, algorithm, status, seconds, moves, context.expanded(), peak[0]);
+        }
+    }
+
+    /*
+    Reads the plan of a job back from its output file and replays it on the problem, so a search that
+    returns an illegal plan, one that misses the goal or a wrong move count shows up as "invalid plan" in
+    the summary instead of "solved".
+    */
+    private static String checkPlan(Problem problem, String output, int moves, PrintStream log) {
+        List<Move> plan = moves == 0 ? List.of() : PDDLParser.readPlan(output, problem.getBlocks());
+        String error = plan == null ? "the plan file cannot be read"
+                : plan.size() != moves ? "the plan has " + plan.size() + " moves, the search reported " + moves
+                : problem.checkPlan(plan);
+        if (error != null) {
+            log.println("Invalid plan: " + error + ".");
+            return "invalid plan";
+        }
+        return "solved";
+    }
+
+    // Raises the peak of every running job to the heap in use now
+    private void sampleHeap() {
+        for (long[] peak : running) {
+            raise(peak);
+        }
+    }
+
+    // Raises the peak to the heap in use now
+    private static void raise(long[] peak) {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        synchronized (peak) {
+            peak[0] = Math.max(peak[0], used);
+        }
+    }
+
+    private void writeSummary(List<JobResult> results) {
+        Path file = Paths.get("Output", summary);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            if (summary.endsWith(".json")) {
+                out.println("[");
+                for (int i = 0; i < results.size(); i++) {
+                    JobResult r = results.get(i);
+                    out.printf(Locale.ROOT, "  {\"problem\": \"%s\", \"algorithm\": \"%s\", \"status\": \"%s\", \"seconds\": %.3f, "
+                                    + "\"moves\": %s, \"expanded\": %d, \"peakHeapBytes\": %d}%s%n",
+                            r.problem(), r.algorithm(), r.status(), r.seconds(), r.moves() < 0 ? "null" : String.valueOf(r.moves()),
+                            r.expanded(), r.peakHeapBytes(), i + 1 < results.size() ? "," : "");
+                }
+                out.println("]");
+            } else {
+                out.println("problem,algorithm,status,seconds,moves,expanded,peak_heap_bytes");
+                for (JobResult r : results) {
+                    out.printf(Locale.ROOT, "%s,%s,%s,%.3f,%s,%d,%d%n", r.problem(), r.algorithm(), r.status(), r.seconds(),
+                            r.moves() < 0 ? "" : String.valueOf(r.moves()), r.expanded(), r.peakHeapBytes());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Number of blocks in a file name like probBLOCKS-10-0.pddl, so the summary lists small problems first
+    private static int blockCount(String problem) {
+        String[] parts = problem.split("-");
+        try {
+            return parts.length > 1 ? Integer.parseInt(parts[1]) : Integer.MAX_VALUE;
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/*
+    Open list for searches whose priorities are small non-negative integers, such as f and h.
+
+    The queue holds node indexes of a NodeArena and reads their priorities through the two functions it is
+    given. Nodes are kept in buckets by a primary and a secondary priority (for A*: f, with lower h first
+    among equal f), and the queue remembers the smallest non-empty primary bucket, so push and poll are O(1)
+    apart from skipping empty buckets, instead of the O(log n) of a binary heap.
+
+    Every node records its slot in its bucket, so a queued node can be taken out in O(1) by moving the last
+    node of the bucket into its slot. Searches use this to replace the queued node of a state that is
+    reached again with a lower g, so the open list never holds stale copies.
+*/
+public class BucketQueue {
+    private final IntUnaryOperator primary;
+    private final IntUnaryOperator secondary;
+    private final List<List<IntBucket>> buckets = new ArrayList<>(); // buckets.get(primary).get(secondary)
+    private int[] counts = new int[16]; // Nodes per primary bucket
+    private int[] slots = new int[1 << 12]; // Slot + 1 of every queued node in its bucket, 0 when not queued
+    private int size;
+    private int min; // No primary bucket below this one holds a node
+    private int peak;
+
+    public BucketQueue(IntUnaryOperator primary, IntUnaryOperator secondary) {
+        this.primary = primary;
+        this.secondary = secondary;
+    }
+
+    // Adds the node, whose priorities must not change while it is queued
+    public void push(int node) {
+        int p = primary.applyAsInt(node);
+        IntBucket bucket = bucket(p, secondary.applyAsInt(node));
+        if (node >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(node + 1, slots.length * 2));
+        }
+        slots[node] = bucket.size + 1;
+        bucket.add(node);
+        counts[p]++;
+        min = Math.min(min, p);
+        size++;
+        peak = Math.max(peak, size);
+    }
+
+    // Removes and returns a node with the lowest primary and, among those, the lowest secondary priority, or -1
+    public int poll() {
+        if (size == 0) {
+            return -1;
+        }
+        while (counts[min] == 0) {
+            min++;
+        }
+        for (IntBucket bucket : buckets.get(min)) {
+            if (bucket.size > 0) {
+                int node = bucket.nodes[--bucket.size]; // Last in, first out among equal priorities
+                slots[node] = 0;
+                counts[min]--;
+                size--;
+                return node;
+            }
+        }
+        throw new IllegalStateException("Bucket count out of sync");
+    }
+
+    // Checks whether the node is in the queue
+    public boolean contains(int node) {
+        return node < slots.length && slots[node] != 0;
+    }
+
+    // Takes a queued node out of its bucket by moving the bucket's last node into its slot
+    public void remove(int node) {
+        int p = primary.applyAsInt(node);
+        IntBucket bucket = bucket(p, secondary.applyAsInt(node));
+        int last = bucket.nodes[--bucket.size];
+        if (last != node) {
+            bucket.nodes[slots[node] - 1] = last;
+            slots[last] = slots[node];
+        }
+        slots[node] = 0;
+        counts[p]--;
+        size--;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Returns the largest number of nodes queued at once
+    public int peakSize() {
+        return peak;
+    }
+
+    // Returns the bucket for the two priorities, creating it and the ones below it when needed
+    private IntBucket bucket(int p, int s) {
+        while (buckets.size() <= p) {
+            buckets.add(new ArrayList<>());
+        }
+        if (counts.length <= p) {
+            counts = Arrays.copyOf(counts, Math.max(p + 1, counts.length * 2));
+        }
+        List<IntBucket> level = buckets.get(p);
+        while (level.size() <= s) {
+            level.add(new IntBucket());
+        }
+        return level.get(s);
+    }
+
+    // A growable stack of node indexes
+    private static final class IntBucket {
+        int[] nodes = new int[16];
+        int size;
+
+        void add(int node) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            nodes[size++] = node;
+        }
+    }
+}
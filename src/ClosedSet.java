@@ -0,0 +1,179 @@
+import java.util.Arrays;
+
+/*
+    Closed list of a search, keyed by the 64-bit Zobrist fingerprints of the states.
+
+    The table is a plain long[] with open addressing and linear probing, so an entry costs 8 bytes
+    divided by the load factor and no object is kept per state: once a state is closed, nothing in
+    here holds on to it. The capacity is a power of two and doubles whenever the table is 3/4 full,
+    so its size at any point only depends on the number of entries.
+
+    By default two states with the same fingerprint are taken to be the same state. With 64-bit keys
+    a false match is very unlikely on the problem sizes we run, but it is possible, so the exact
+    verification mode also stores every state packed into bytes (one byte per block on problems with
+    fewer than 255 blocks) and compares it whenever the fingerprints match.
+*/
+public class ClosedSet {
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final long EMPTY = 0L; // Fingerprint 0 is stored as ZERO_KEY so it never looks empty
+    private static final long ZERO_KEY = 0x9E3779B97F4A7C15L;
+
+    private final boolean exact;
+    private long[] keys;
+    private int[] entries; // Exact mode only: entry number of the packed state stored for each slot
+    private byte[] packed; // Exact mode only: packed states, bytesPerState bytes per entry
+    private int bytesPerBlock;
+    private int bytesPerState;
+    private int size;
+    private int mask;
+
+    public ClosedSet(boolean exact) {
+        this.exact = exact;
+        keys = new long[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+        if (exact) {
+            entries = new int[INITIAL_CAPACITY];
+        }
+    }
+
+    // Checks whether a state with the same fingerprint (and, in exact mode, the same blocks) was added
+    public boolean contains(State s) {
+        long key = keyOf(s);
+        for (int slot = slotOf(key); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key && (!exact || matches(entries[slot], s))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Checks whether the child reached from parent by move was added, without building the child
+    public boolean contains(State parent, Move move) {
+        long key = parent.fingerprintAfter(move);
+        key = key == EMPTY ? ZERO_KEY : key;
+        for (int slot = slotOf(key); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key && (!exact || matches(entries[slot], parent, move))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Adds the state, returning false if it was already in the set
+    public boolean add(State s) {
+        long key = keyOf(s);
+        int slot = slotOf(key);
+        for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key && (!exact || matches(entries[slot], s))) {
+                return false;
+            }
+        }
+        keys[slot] = key;
+        if (exact) {
+            entries[slot] = size;
+            pack(size, s);
+        }
+        size++;
+        if (size > keys.length - (keys.length >>> 2)) {
+            resize();
+        }
+        return true;
+    }
+
+    // Checks whether fingerprint matches are verified against the full state (--exact)
+    public boolean isExact() {
+        return exact;
+    }
+
+    // Returns the number of states in the set
+    public int size() {
+        return size;
+    }
+
+    // Returns the bytes held by the table (and by the packed states in exact mode)
+    public long memoryBytes() {
+        long bytes = (long) keys.length * Long.BYTES;
+        if (exact) {
+            bytes += (long) entries.length * Integer.BYTES + (packed == null ? 0 : packed.length);
+        }
+        return bytes;
+    }
+
+    // Returns the average memory per closed state, the figure printed at the end of a run
+    public double bytesPerEntry() {
+        return size == 0 ? 0 : (double) memoryBytes() / size;
+    }
+
+    private static long keyOf(State s) {
+        long key = s.fingerprint();
+        return key == EMPTY ? ZERO_KEY : key;
+    }
+
+    private int slotOf(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    // Doubles the table and reinserts the keys; packed states stay where they are
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldEntries = entries;
+        keys = new long[oldKeys.length << 1];
+        mask = keys.length - 1;
+        if (exact) {
+            entries = new int[keys.length];
+        }
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key == EMPTY) continue;
+            int slot = slotOf(key);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            if (exact) {
+                entries[slot] = oldEntries[i];
+            }
+        }
+    }
+
+    // Appends the packed on[] array of the state as entry number entry
+    private void pack(int entry, State s) {
+        if (packed == null) {
+            int n = s.size();
+            bytesPerBlock = n < 0xFF ? 1 : n < 0xFFFF ? 2 : 4;
+            bytesPerState = n * bytesPerBlock;
+            packed = new byte[INITIAL_CAPACITY * bytesPerState];
+        }
+        int offset = entry * bytesPerState;
+        if (offset + bytesPerState > packed.length) {
+            packed = Arrays.copyOf(packed, packed.length << 1);
+        }
+        for (int block = 0; block < s.size(); block++) {
+            int value = s.below(block) + 1; // State.TABLE becomes 0
+            for (int b = bytesPerBlock - 1; b >= 0; b--) {
+                packed[offset++] = (byte) (value >>> (8 * b));
+            }
+        }
+    }
+
+    // Compares the packed entry with the on[] array of the state
+    private boolean matches(int entry, State s) {
+        return matches(entry, s, null);
+    }
+
+    // Compares the packed entry with the on[] array the state would have after the move (no move if null)
+    private boolean matches(int entry, State s, Move move) {
+        int offset = entry * bytesPerState;
+        for (int block = 0; block < s.size(); block++) {
+            int value = 0;
+            for (int b = 0; b < bytesPerBlock; b++) {
+                value = (value << 8) | (packed[offset++] & 0xFF);
+            }
+            int below = move != null && move.block() == block ? move.to() : s.below(block);
+            if (value != below + 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
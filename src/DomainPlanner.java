@@ -0,0 +1,146 @@
+import java.util.*;
+
+/*
+    Domain-specific planner for blocks world, without any search.
+
+    A block is well placed when it sits on its goal block (or on the table, if that is its goal) and
+    everything below it is well placed too. A block the goal leaves free is well placed wherever it sits as
+    long as everything below it is, and is put on the table when it has to move. Well-placed blocks never
+    have to move again, and every other block has to move at least once. The planner repeats two kinds of
+    moves until every block is well placed:
+    - Constructive moves put a clear block straight into its final place: on the table if that is its goal,
+      or on its goal block once that one is well placed and clear. The block is well placed afterwards.
+    - When no constructive move exists, a clear block that is not well placed is moved from a tower to the
+      table, which uncovers the block below it.
+    Every block is moved at most twice, so the plan is at most twice as long as an optimal one and never
+    longer than the plans of moving everything to the table and rebuilding the goal.
+
+    Instead of rescanning all blocks after each move, the blocks a move can affect (the block it uncovers,
+    the block it places and the goal blocks resting on those) are pushed as candidates and checked again
+    when they are taken, so the whole plan is built in O(n) time.
+*/
+public class DomainPlanner {
+    private static final int NONE = -2; // Marker for "nothing on top" in the above[] array
+
+    private final int[] on; // Working copy of the initial on[] array, changed move by move
+    private final int[] goal; // What every block sits on in the goal: a block id, State.TABLE or Goal.ANY
+    private final int[] above; // above[b] is the block on top of b, or NONE
+    private final int[] goalAbove; // goalAbove[b] is the block that goes on top of b in the goal, or NONE
+    private final boolean[] wellPlaced;
+    private final ArrayDeque<Integer> constructive = new ArrayDeque<>(); // Candidates for a move into their final place
+    private final ArrayDeque<Integer> toTable = new ArrayDeque<>(); // Candidates for a move to the table
+
+    public DomainPlanner(Problem problem) {
+        this.on = problem.getInit().getState().clone();
+        this.goal = new int[on.length];
+        int n = on.length;
+        above = new int[n];
+        goalAbove = new int[n];
+        wellPlaced = new boolean[n];
+        Arrays.fill(above, NONE);
+        Arrays.fill(goalAbove, NONE);
+        for (int block = 0; block < n; block++) {
+            goal[block] = problem.getGoal().below(block);
+            if (on[block] != State.TABLE) above[on[block]] = block;
+            if (goal[block] >= 0) goalAbove[goal[block]] = block;
+        }
+    }
+
+    /**
+     * Builds the plan from the initial state of the problem to its goal.
+     *
+     * @return The moves of the plan, in order.
+     */
+    public List<Move> plan() {
+        int n = on.length;
+        // Well-placed blocks are found bottom-up from the blocks on the table, in one pass over the towers
+        for (int block = 0; block < n; block++) {
+            if (on[block] == State.TABLE && reached(block)) {
+                for (int b = block; b != NONE && reached(b); b = above[b]) {
+                    wellPlaced[b] = true;
+                }
+            }
+        }
+        for (int block = 0; block < n; block++) {
+            if (above[block] == NONE && !wellPlaced[block]) {
+                constructive.add(block);
+                toTable.add(block);
+            }
+            if (wellPlaced[block] && above[block] == NONE && goalAbove[block] != NONE) {
+                constructive.add(goalAbove[block]);
+            }
+        }
+
+        List<Move> moves = new ArrayList<>();
+        while (true) {
+            Integer block = nextConstructive();
+            if (block != null) {
+                moves.add(move(block, target(block)));
+                wellPlaced[block] = true;
+                if (goalAbove[block] != NONE) {
+                    constructive.add(goalAbove[block]); // Its goal block is now well placed and clear
+                }
+                continue;
+            }
+            block = nextToTable();
+            if (block == null) {
+                return moves; // Every block is well placed
+            }
+            moves.add(move(block, State.TABLE));
+            constructive.add(block);
+        }
+    }
+
+    // Returns the next block that can be moved straight into its final place, or null
+    private Integer nextConstructive() {
+        while (!constructive.isEmpty()) {
+            int block = constructive.poll();
+            if (wellPlaced[block] || above[block] != NONE) continue;
+            int target = target(block);
+            if (target == State.TABLE || (wellPlaced[target] && above[target] == NONE)) {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    // Returns the next clear block that is stacked on another block without being well placed, or null
+    private Integer nextToTable() {
+        while (!toTable.isEmpty()) {
+            int block = toTable.poll();
+            if (!wellPlaced[block] && above[block] == NONE && on[block] != State.TABLE) {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    // True when the block sits where the goal wants it, taking a free block to be anywhere
+    private boolean reached(int block) {
+        return goal[block] == Goal.ANY || on[block] == goal[block];
+    }
+
+    // Returns where a constructive move puts the block: its goal block, or the table
+    private int target(int block) {
+        return goal[block] == Goal.ANY ? State.TABLE : goal[block];
+    }
+
+    // Moves a clear block and pushes the blocks whose candidacy the move can change
+    private Move move(int block, int to) {
+        int from = on[block];
+        if (from != State.TABLE) {
+            above[from] = NONE;
+            // The uncovered block can now move itself, or take its goal block on top if it is well placed
+            constructive.add(from);
+            toTable.add(from);
+            if (wellPlaced[from] && goalAbove[from] != NONE) {
+                constructive.add(goalAbove[from]);
+            }
+        }
+        if (to != State.TABLE) {
+            above[to] = block;
+        }
+        on[block] = to;
+        return new Move(block, from, to);
+    }
+}
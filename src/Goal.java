@@ -0,0 +1,161 @@
+import java.util.*;
+
+/*
+    The goal of a problem as the set of facts it requires: (ON X Y) makes X sit on Y and (ONTABLE X) makes X
+    sit on the table. Blocks without a fact are free and may end up anywhere, so a goal can describe several
+    towers, or only the few blocks that matter. CLEAR facts are not goals of their own here.
+
+    A state reaches the goal when every fact holds. The number of facts a state does not satisfy changes by
+    at most one per move, since only the fact of the moved block can change, so State keeps it up to date
+    move by move and the goal test is a single comparison with zero. The same count never overestimates
+    the moves left, as every unsatisfied fact needs its block to move at least once.
+
+    A free block that has nowhere to go but the table, like the bottom block of the single goal tower of
+    every problem in Problems/, gets an ONTABLE fact when the goal is built. A goal in which every block
+    then has a fact is complete: exactly one state reaches it, which the bidirectional search and the
+    pattern database need.
+*/
+public final class Goal {
+    public static final int ANY = -2; // Marker for a free block in the below[] array
+    private static final int FREE = -3; // FREE - b stands for free block b while the roots are followed
+
+    private final int[] below; // below[b] is what b must sit on: a block id, State.TABLE, or ANY
+    private final int[] positions; // Index of every block in its goal tower counted from the table, -1 if unknown
+    private final int facts;
+
+    /**
+     * Builds the goal from the required facts.
+     *
+     * @param below What every block must sit on: a block id, State.TABLE or ANY. The array is owned by the goal afterwards.
+     * @throws IllegalArgumentException If no state can satisfy the facts.
+     */
+    public Goal(int[] below) {
+        this.below = below;
+        int n = below.length;
+        boolean[] covered = new boolean[n]; // Some fact puts a block on it
+        for (int block = 0; block < n; block++) {
+            int target = below[block];
+            if (target == block) {
+                throw new IllegalArgumentException("A goal fact puts block " + block + " on itself");
+            }
+            if (target >= 0) {
+                if (covered[target]) {
+                    throw new IllegalArgumentException("Goal facts put two blocks on block " + target);
+                }
+                covered[target] = true;
+            }
+        }
+        int[] root = roots(); // Where the chain of facts below every block ends: State.TABLE or a free block
+        int free = 0;
+        int freeBlock = -1;
+        for (int block = 0; block < n; block++) {
+            if (below[block] == ANY) {
+                free++;
+                freeBlock = block;
+            }
+        }
+        // A single free block is forced onto the table when every clear goal block sits on top of it
+        boolean forced = free == 1;
+        for (int block = 0; forced && block < n; block++) {
+            if (!covered[block] && root[block] != freeBlock) {
+                forced = false;
+            }
+        }
+        if (forced) {
+            below[freeBlock] = State.TABLE;
+            root = roots();
+            free = 0;
+        }
+        this.facts = n - free;
+        this.positions = new int[n];
+        for (int block = 0; block < n; block++) {
+            positions[block] = root[block] == State.TABLE ? height(block) : -1;
+        }
+    }
+
+    // Follows the facts below every block to the table or to a free block, rejecting cycles
+    private int[] roots() {
+        int n = below.length;
+        int[] root = new int[n];
+        Arrays.fill(root, Integer.MIN_VALUE); // Not known yet
+        int[] chain = new int[n];
+        for (int start = 0; start < n; start++) {
+            int length = 0;
+            int b = start;
+            while (b >= 0 && root[b] == Integer.MIN_VALUE) {
+                root[b] = Integer.MAX_VALUE; // On the chain being followed
+                chain[length++] = b;
+                b = below[b] == ANY ? FREE - b : below[b]; // A free block is its own root, encoded below ANY
+            }
+            if (b >= 0 && root[b] == Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Goal facts stack block " + b + " on top of itself");
+            }
+            int end = b >= 0 ? root[b] : b == State.TABLE ? State.TABLE : FREE - b;
+            for (int i = 0; i < length; i++) {
+                root[chain[i]] = end;
+            }
+        }
+        return root;
+    }
+
+    // Number of facts between the block and the table, for a block whose chain ends on the table
+    private int height(int block) {
+        int height = 0;
+        for (int b = below[block]; b != State.TABLE; b = below[b]) {
+            height++;
+        }
+        return height;
+    }
+
+    // Returns what the block must sit on: a block id, State.TABLE or ANY
+    public int below(int block) {
+        return below[block];
+    }
+
+    // Returns the index of the block in its goal tower counted from the table, or -1 if the goal does not fix it
+    public int position(int block) {
+        return positions[block];
+    }
+
+    // Returns the number of facts of the goal
+    public int facts() {
+        return facts;
+    }
+
+    // True when every block has a fact, so exactly one state reaches the goal
+    public boolean isComplete() {
+        return facts == below.length;
+    }
+
+    // Returns a state that reaches the goal: the free blocks on the table, every other block on its goal block
+    public int[] completion() {
+        int[] on = below.clone();
+        for (int block = 0; block < on.length; block++) {
+            if (on[block] == ANY) {
+                on[block] = State.TABLE;
+            }
+        }
+        return on;
+    }
+
+    // Counts the facts the on[] array does not satisfy
+    public int unsatisfied(int[] on) {
+        int count = 0;
+        for (int block = 0; block < on.length; block++) {
+            int target = below[block];
+            if (target != ANY && on[block] != target) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Returns how much the move changes the number of unsatisfied facts: -1, 0 or +1
+    public int change(Move move) {
+        int target = below[move.block()];
+        if (target == ANY) {
+            return 0;
+        }
+        return (move.to() != target ? 1 : 0) - (move.from() != target ? 1 : 0);
+    }
+}
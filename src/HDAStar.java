@@ -0,0 +1,218 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Hash-distributed A* (HDA*).
+
+    Every worker thread owns the states whose fingerprint hashes to it, and keeps its own open list and
+    closed list for them, so no search structure is ever shared or locked. When a worker generates a child
+    that belongs to another worker, it drops the child into that worker's mailbox, a lock-free
+    ConcurrentLinkedQueue; children a worker owns itself go straight into its own open list.
+
+    A goal reached by any worker becomes the incumbent when it is cheaper than the current one, and from
+    then on nodes whose f is not below the incumbent's cost are neither expanded nor sent. The search is
+    over when every worker is idle (nothing below the incumbent in its open list and an empty mailbox)
+    and no child is in flight between workers. Sends bump an epoch counter, and a worker only declares
+    the search over if the epoch did not move while it checked, which rules out a message slipping past
+    between reading the counters and the idle flags.
+
+    With a heuristic that never overestimates (--heuristic=pdb), a node with f below the incumbent's cost
+    is left whenever a shorter plan exists, so the plan returned is optimal, like that of sequential A*.
+    The default heuristic does overestimate: nodes on a shorter plan can then have an f above the
+    incumbent and be pruned, and the plan depends on the number of workers and on the order in which
+    they reach the goals, so it can be longer than the plan of astar.
+*/
+public class HDAStar {
+    private final Problem problem;
+    private final int workers;
+    private final List<ConcurrentLinkedQueue<State>> mailboxes = new ArrayList<>();
+    private final AtomicIntegerArray idle; // 1 while a worker has nothing to do
+    private final AtomicLong inFlight = new AtomicLong(); // Children sent but not yet received
+    private final AtomicLong epoch = new AtomicLong(); // Incremented on every send
+    private final AtomicReference<State> incumbent = new AtomicReference<>(); // Best goal node found so far
+    private final long[] expanded; // Nodes expanded by each worker, read after the workers finished
+    private final SearchContext context = SearchContext.current(); // Shared by all workers of the run
+    private final SearchStats stats = context.stats(); // Open and closed list peaks are those of the largest worker
+    private volatile int incumbentCost = Integer.MAX_VALUE;
+    private volatile boolean done;
+    private volatile SearchCancelledException cancelled; // Set by the worker that found the run stopped
+
+    public HDAStar(Problem problem, int workers) {
+        this.problem = problem;
+        this.workers = workers;
+        this.idle = new AtomicIntegerArray(workers);
+        this.expanded = new long[workers];
+        for (int i = 0; i < workers; i++) {
+            mailboxes.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Runs HDA* with the configured number of workers.
+     * The nodes expanded by each worker and the overall expansion rate are printed at the end.
+     *
+     * @param path The solution path if found.
+     * @return True if a path is found, otherwise false.
+     */
+    public boolean search(ArrayList<State> path) {
+        State start = problem.getInit();
+        start.setG(0);
+        start.setH(problem.Heuristic(start));
+        start.setF(start.getH());
+        inFlight.incrementAndGet();
+        mailboxes.get(owner(start)).add(start);
+
+        long time1 = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            int id = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    work(id);
+                } catch (SearchCancelledException e) {
+                    cancelled = e;
+                    done = true; // Stops the other workers too
+                }
+            }, "hda-worker-" + i);
+            thread.setDaemon(true); // Lets the SIGAlarm exit even while workers are running
+            threads.add(thread);
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            done = true;
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        long time2 = System.nanoTime();
+        if (cancelled != null) {
+            throw cancelled;
+        }
+
+        long total = Arrays.stream(expanded).sum();
+        System.out.println("Nodes expanded per worker: " + Arrays.toString(expanded));
+        System.out.printf("%d workers expanded %d nodes (%.0f nodes per second).%n",
+                workers, total, total / Math.max(1e-9, (time2 - time1) / 1e9));
+
+        State current = incumbent.get();
+        if (current == null) {
+            return false;
+        }
+        while (current != null) {
+            path.add(current);
+            current = current.getParent();
+        }
+        Collections.reverse(path);
+        return true;
+    }
+
+    // The main loop of one worker
+    private void work(int id) {
+        ConcurrentLinkedQueue<State> mailbox = mailboxes.get(id);
+        PriorityQueue<State> openList = new PriorityQueue<>(
+                Comparator.comparingInt(State::getF).thenComparingInt(State::getH)); // Lower h breaks ties
+        Map<State, State> seen = new HashMap<>(); // Best node found for every owned state
+
+        while (!done) {
+            // Receive everything that was sent to this worker
+            State received;
+            while ((received = mailbox.poll()) != null) {
+                idle.set(id, 0); // Must be visible before the message stops counting as in flight
+                inFlight.decrementAndGet();
+                receive(received, openList, seen);
+            }
+
+            State current = openList.poll();
+            if (current == null || current.getF() >= incumbentCost) {
+                if (current != null) {
+                    openList.add(current); // Put back, nothing in the open list can improve the plan any more
+                }
+                idle.set(id, 1);
+                if (finished()) {
+                    done = true;
+                } else {
+                    LockSupport.parkNanos(20_000);
+                }
+                continue;
+            }
+            if (seen.get(current) != current) {
+                continue; // A cheaper node for this state was received after this one was queued
+            }
+            expanded[id]++;
+            context.expand();
+            stats.layer(current.getF());
+
+            if (current.isGoal()) {
+                offerIncumbent(current);
+                continue;
+            }
+            long since = stats.clock();
+            List<Move> moves = current.generateMoves();
+            stats.generated(moves.size());
+            for (Move move : moves) {
+                State child = current.applyMove(move);
+                child.setH(problem.Heuristic(current, move));
+                child.setF(child.getG() + child.getH());
+                if (child.getF() >= incumbentCost) {
+                    continue; // Cannot lead to a better plan than the incumbent
+                }
+                int owner = owner(child);
+                if (owner == id) {
+                    receive(child, openList, seen);
+                } else {
+                    inFlight.incrementAndGet();
+                    epoch.incrementAndGet();
+                    mailboxes.get(owner).add(child);
+                }
+            }
+            stats.successorTime(since);
+            stats.open(openList.size());
+            stats.closed(seen.size());
+        }
+    }
+
+    // Adds a node to the owner's open list unless the state was already reached with a path at most as long
+    private void receive(State node, PriorityQueue<State> openList, Map<State, State> seen) {
+        State known = seen.get(node);
+        if (known == null || node.getG() < known.getG()) {
+            seen.put(node, node);
+            openList.add(node);
+        } else {
+            stats.duplicate();
+        }
+    }
+
+    // Makes the goal node the incumbent if it is cheaper than the current one
+    private synchronized void offerIncumbent(State node) {
+        if (node.getG() < incumbentCost) {
+            incumbent.set(node);
+            incumbentCost = node.getG();
+        }
+    }
+
+    // Checks whether every worker is idle and nothing is in flight, with no send happening meanwhile
+    private boolean finished() {
+        long before = epoch.get();
+        if (inFlight.get() != 0) {
+            return false;
+        }
+        for (int i = 0; i < workers; i++) {
+            if (idle.get(i) == 0) {
+                return false;
+            }
+        }
+        return epoch.get() == before;
+    }
+
+    // Returns the worker that owns the state
+    private int owner(State s) {
+        return (int) Long.remainderUnsigned(s.fingerprint(), workers);
+    }
+}
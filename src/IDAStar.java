@@ -0,0 +1,139 @@
+import java.util.*;
+
+/*
+    Iterative-deepening A* (IDA*).
+
+    Each iteration is a depth-first search that cuts off every node whose f = g + h is above the current
+    threshold; the next threshold is the smallest f that was cut off. The search works on one mutable
+    copy of the initial state and makes and unmakes moves in place, with the heuristic of a child
+    derived from the move (Problem.Heuristic(parent, move)). Instead of a closed list, only the
+    fingerprints of the states on the current path are kept, to avoid walking in cycles. Memory is
+    therefore proportional to the depth of the solution and not to the number of states seen.
+
+    The plan is shortest only when the heuristic never overestimates, as with --heuristic=pdb. The
+    default heuristic does overestimate, and the first plan within a threshold can then be much longer
+    than the optimum, and longer than the plan of astar.
+*/
+public class IDAStar {
+    private static final int FOUND = -1;
+
+    private final Problem problem;
+    private final State current; // The single mutable state the whole search works on
+    private final ArrayDeque<Move> moves = new ArrayDeque<>(); // Moves from the initial state to current
+    private long[] pathHashes = new long[64]; // Fingerprints of the states on the current path
+    private long nodes; // Nodes expanded in the current iteration
+    private final SearchContext context = SearchContext.current();
+    private final SearchStats stats = context.stats();
+
+    public IDAStar(Problem problem) {
+        this.problem = problem;
+        this.current = problem.getInit().copy();
+    }
+
+    /**
+     * Runs IDA* until the goal is found or every threshold has been tried.
+     * Iterations, nodes expanded per iteration and the final threshold are printed as the search goes.
+     *
+     * @param path The solution path if found, as full states from the initial state to the goal.
+     * @return True if a path is found, otherwise false.
+     */
+    public boolean search(ArrayList<State> path) {
+        current.setH(problem.Heuristic(current));
+        int threshold = current.getH();
+        int iteration = 0;
+        while (true) {
+            iteration++;
+            nodes = 0;
+            stats.layer(threshold);
+            int result = search(0, threshold);
+            System.out.println("Iteration " + iteration + ": threshold " + threshold + ", " + nodes + " nodes expanded.");
+            if (result == FOUND) {
+                System.out.println("IDA* finished after " + iteration + " iterations with threshold " + threshold + ".");
+                buildPath(path);
+                return true;
+            }
+            if (result == Integer.MAX_VALUE) {
+                return false; // Nothing was cut off, so there is no deeper layer to try
+            }
+            threshold = result;
+        }
+    }
+
+    /*
+    Depth-first search below the current state with the given threshold.
+    Returns FOUND if the goal was reached (the moves are then left on the stack), otherwise the
+    smallest f-value that exceeded the threshold.
+    */
+    private int search(int g, int threshold) {
+        int f = g + current.getH();
+        if (f > threshold) {
+            return f;
+        }
+        if (current.isGoal()) {
+            return FOUND;
+        }
+        nodes++;
+        context.expand();
+        int depth = moves.size();
+        pushHash(depth, current.fingerprint());
+
+        int min = Integer.MAX_VALUE;
+        int h = current.getH();
+        long since = stats.clock(); // The children are searched right away, so only the move generation is timed
+        List<Move> children = current.generateMoves(moves.isEmpty() ? -1 : moves.peek().block());
+        stats.successorTime(since);
+        stats.generated(children.size());
+        stats.open(depth + 1);
+        for (Move move : children) {
+            if (onPath(depth, current.fingerprintAfter(move))) {
+                stats.duplicate();
+                continue; // Only cycles along the current path are checked
+            }
+            int childH = problem.Heuristic(current, move); // Needs the state before the move is made
+            current.makeMove(move);
+            current.setH(childH);
+            moves.push(move);
+
+            int result = search(g + 1, threshold);
+            if (result == FOUND) {
+                return FOUND;
+            }
+
+            moves.pop();
+            current.unmakeMove(move);
+            current.setH(h);
+            min = Math.min(min, result);
+        }
+        return min;
+    }
+
+    // Records the fingerprint of the state at the given depth of the current path
+    private void pushHash(int depth, long hash) {
+        if (depth == pathHashes.length) {
+            pathHashes = Arrays.copyOf(pathHashes, depth * 2);
+        }
+        pathHashes[depth] = hash;
+    }
+
+    // Checks whether a fingerprint belongs to a state on the path up to the given depth
+    private boolean onPath(int depth, long hash) {
+        for (int i = 0; i <= depth; i++) {
+            if (pathHashes[i] == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Replays the moves from the initial state to build the full states of the solution path
+    private void buildPath(ArrayList<State> path) {
+        State state = problem.getInit();
+        state.setG(0);
+        path.add(state);
+        Iterator<Move> it = moves.descendingIterator(); // The stack holds the last move first
+        while (it.hasNext()) {
+            state = state.applyMove(it.next());
+            path.add(state);
+        }
+    }
+}
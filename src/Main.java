@@ -20,13 +20,19 @@ public class Main {
     public static void main(String[] args) {
         /*
         Entry point for the program.
-        - If exactly three command-line arguments are provided, the AgentActions method is invoked to solve the problem.
+        - If the first argument is "batch", the BatchRunner solves a whole matrix of problems and algorithms.
+        - If the first argument is "serve", the SolverServer answers JSON-lines solve requests until it is stopped.
+        - If at least three command-line arguments are provided, the AgentActions method is invoked to solve the problem.
         - Otherwise, the printInfo method is called to display usage instructions.
         
         Parameters:
-        - args: Command-line arguments (algorithm, input file, output file).
+        - args: Command-line arguments (algorithm, input file, output file, followed by optional settings).
         */
-        if (args.length == 3) {
+        if (args.length >= 4 && args[0].equals("batch")) {
+            BatchRunner.run(args);
+        } else if (args.length >= 1 && args[0].equals("serve")) {
+            SolverServer.run(args);
+        } else if (args.length >= 3) {
             Main.AgentActions(args);
         } else {
             Main.printInfo();
@@ -39,7 +45,7 @@ public class Main {
         and saving the solution to the output file.
         
         Parameters:
-        - args: An array containing the search algorithm, input file name, and output file name.
+        - args: An array containing the search algorithm, input file name, output file name and optional settings.
         
         Steps:
         1. Parse the input file to create the initial and goal states.
@@ -53,6 +59,7 @@ public class Main {
         String algo = args[0]; // Algorithm to use
         String infileName = args[1]; // Input file name
         String outfileName = args[2]; // Output file name
+        SearchOptions options = SearchOptions.parse(args, 3); // Optional settings after the file names
 
         // Parse the input file to create the Problem instance
         PDDLParser parser = new PDDLParser(infileName);
@@ -62,18 +69,27 @@ public class Main {
 
         // Display the initial and final states
         System.out.println("Initial State:");
-        problem.getInit().filterState().printState();
+        problem.getInit().printState(problem.getBlocks());
         System.out.println("Final State:");
-        problem.getFinal().filterState().printState();
+        problem.getFinal().printState(problem.getBlocks());
+        if (!problem.getGoal().isComplete()) {
+            System.out.println("The goal has " + problem.getGoal().facts() + " facts, the blocks without one are free (shown on the table).\n");
+        }
         System.out.println("Problem parsed in: " + (time2 - time1) / 1000.0 + " seconds.\n");
 
         // Set an alarm for 60 seconds and solve the problem
         alarm.setAlarm(60);
         time3 = System.currentTimeMillis();
-        Search.SelectSearch(problem, algo, outfileName); // Perform the search
+        try {
+            Search.SelectSearch(problem, algo, outfileName, options); // Perform the search
+        } finally {
+            alarm.cancelAlarm(); // A search that fails, like the pattern database on a partial goal, ends the run at once
+        }
         time4 = System.currentTimeMillis();
         System.out.println("Elapsed time: " + (time4 - time3) / 1000.0 + " seconds.");
-        alarm.cancelAlarm();
+        if (options.isCache()) {
+            System.out.println("Plan cache: " + PlanCache.sharedIfUsed().summary() + ".");
+        }
     }
 
     static void printInfo() {
@@ -85,17 +101,50 @@ public class Main {
         - Available search algorithms and their descriptions.
         - Example usage and notes on input file formatting and supported algorithms.
         */
-        System.out.println("Usage: java -jar <program-name>.jar <algorithm> <input-file> <output-file>");
+        System.out.println("Usage: java -jar <program-name>.jar <algorithm> <input-file> <output-file> [options]");
         System.out.println("\nDescription:");
         System.out.println("  This program solves planning problems based on the provided PDDL input file.");
         System.out.println("\nArguments:");
         System.out.println("  <algorithm>: The search algorithm to use. Options are:");
-        System.out.println("               - 'breadth': Breadth-first search");
+        System.out.println("               - 'breadth': Breadth-first search (each layer expanded in parallel with --threads above 1)");
+        System.out.println("               - 'bibreadth': Bidirectional breadth-first search (optimal plans, smaller frontiers)");
         System.out.println("               - 'depth': Depth-first search");
+        System.out.println("               - 'iddfs': Iterative-deepening depth-first search (shortest plans)");
         System.out.println("               - 'astar': A* search");
+        System.out.println("               - 'hdastar': Hash-distributed parallel A* search on --threads workers (shortest plans with --heuristic=pdb only)");
         System.out.println("               - 'best': Best-first search");
+        System.out.println("               - 'anytime': Anytime weighted A*, writes every better plan until the deadline");
+        System.out.println("               - 'idastar': Iterative-deepening A* search (memory linear in the solution depth, shortest plans with --heuristic=pdb only)");
+        System.out.println("               - 'domain': Domain-specific planner without search (linear time, at most twice the optimal length)");
+        System.out.println("               - 'portfolio': Races the --portfolio algorithms on separate threads and keeps the first (or --quality) plan");
         System.out.println("\n  <input-file>: Path to the input PDDL file defining the planning problem.");
         System.out.println("  <output-file>: Path to save the generated solution plan.");
+        System.out.println("\nBatch mode: java -jar <program-name>.jar batch <algorithms> <problems> <summary-file> [options]");
+        System.out.println("  <algorithms>: Comma-separated algorithms, or 'all'.");
+        System.out.println("  <problems>: Glob of problem files in Problems/, e.g. 'probBLOCKS-1*.pddl', or 'all'.");
+        System.out.println("  <summary-file>: Summary of all jobs in Output/, JSON if it ends in .json, CSV otherwise.");
+        System.out.println("\nServer mode: java -jar <program-name>.jar serve [port] [options]");
+        System.out.println("  Reads one JSON request per line from stdin, or from connections to 127.0.0.1:<port>, such as");
+        System.out.println("  {\"id\": 1, \"algorithm\": \"astar\", \"problem\": \"probBLOCKS-5-0.pddl\", \"timeout\": 2}");
+        System.out.println("  with \"pddl\" holding the problem itself instead of \"problem\", and \"options\" a list of options.");
+        System.out.println("  Answers each with a JSON line holding the plan, the status and the search counters.");
+        System.out.println("\nOptions:");
+        System.out.println("  --exact: Verify closed-set fingerprint matches against the full state.");
+        System.out.println("  --domain-bound: Prune 'astar', 'best', 'anytime' and 'iddfs' with the plan length of 'domain'.");
+        System.out.println("  --heuristic=pdb: Use the additive pattern database heuristic (stored in PatternDatabases/).");
+        System.out.println("  --pattern-size=K: Blocks per pattern of the pattern database, at most 7 (default: 6).");
+        System.out.println("  --weight=W: First heuristic weight of 'anytime', lowered by 0.5 per round (default: 3).");
+        System.out.println("  --no-prune: Generate every legal move instead of leaving out moves no shortest plan needs.");
+        System.out.println("  --threads=N: Worker threads for parallel searches (default: available processors).");
+        System.out.println("  --jobs=N: Jobs the batch mode runs at once (default: available processors).");
+        System.out.println("  --timeout=S: Seconds each batch job may search before it is stopped (default: 60).");
+        System.out.println("  --portfolio=A,B,...: Algorithms 'portfolio' races (default: best,astar,bibreadth).");
+        System.out.println("  --quality=W: Make 'portfolio' wait for a plan proven within W times the optimal length.");
+        System.out.println("  --stats: Report search telemetry and write it to Output/<output-file>.stats.json.");
+        System.out.println("  --progress=S: Seconds between the progress lines of --stats (default: 5).");
+        System.out.println("  --cache: Reuse the plan of a problem solved before (kept in PlanCache/), searching only on a miss.");
+        System.out.println("  --cache-size=N: Plans the cache keeps in memory, least recently used first out (default: 64).");
+        System.out.println("  --depth-bound=N: Largest depth limit for 'iddfs' (default: two moves per block).");
         System.out.println("\nExample:");
         System.out.println("  java -jar -Xmx1024m -Xms1024m blocks-world.jar astar probBLOCKS-5-2.pddl solution.txt");
         System.out.println("\nNote:");
@@ -0,0 +1,12 @@
+/*
+    A single blocks world move: block is taken from the top of whatever it sits on (from) and put onto
+    to. Both from and to are block ids or State.TABLE. A move together with the state it is applied to
+    is all that is needed to describe a successor, so no child state has to be built to look at it.
+*/
+public record Move(int block, int from, int to) {
+
+    // Returns the move that undoes this one
+    public Move inverse() {
+        return new Move(block, to, from);
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.*;
+
+/*
+    Store for the nodes of a best-first search, kept in parallel primitive arrays instead of State objects.
+
+    A node is an int index into the arrays, which hold its parent node, the move that produced it (block,
+    from and to as shorts, enough for problems below 32768 blocks), its g and h, and the fingerprint of its
+    state: 26 bytes per node, plus about 5 bytes in the index. The on[] array of a node is not stored at
+    all. The search keeps one mutable State and walks it through the search tree with moveTo: it unmakes
+    moves up to the common ancestor of the node it is at and the node it wants, then makes the moves down
+    to that node. Full states are only built again for the final path, by replaying the moves from the
+    initial state.
+
+    The arena also indexes the best node found so far for every fingerprint, in an open-addressing table of
+    node indexes whose keys are read from the fingerprint array, so a search can tell whether a state was
+    already reached with a lower g without any State object. Like the closed list by default, the index
+    takes two states with the same fingerprint to be the same state. In exact mode (--exact) the arena
+    keeps the on[] array of every node after all, and a fingerprint only matches a node with the same one.
+*/
+public class NodeArena {
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final int NONE = -1;
+
+    private int[] parent = new int[INITIAL_CAPACITY];
+    private short[] block = new short[INITIAL_CAPACITY];
+    private short[] from = new short[INITIAL_CAPACITY];
+    private short[] to = new short[INITIAL_CAPACITY];
+    private int[] g = new int[INITIAL_CAPACITY];
+    private int[] h = new int[INITIAL_CAPACITY];
+    private long[] hash = new long[INITIAL_CAPACITY];
+    private int[][] states; // Exact mode only: the on[] array of every node
+    private int size;
+
+    private int[] index = new int[INITIAL_CAPACITY]; // Node index + 1 of the best node per fingerprint, 0 when empty
+    private int indexed;
+
+    private int at = NONE; // The node the working state of moveTo is at
+    private int[] down = new int[64]; // Nodes between the common ancestor and the target of moveTo
+
+    public NodeArena(boolean exact) {
+        if (exact) {
+            states = new int[INITIAL_CAPACITY][];
+        }
+    }
+
+    /**
+     * Adds the root node for the given state and returns its index.
+     *
+     * @throws IllegalArgumentException If the state has too many blocks for the moves stored as shorts.
+     */
+    public int addRoot(State state, int rootH) {
+        if (state.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("The node arena holds problems of at most " + Short.MAX_VALUE + " blocks");
+        }
+        int root = add(NONE, state.fingerprint(), null, 0, rootH);
+        if (states != null) {
+            int[] on = new int[state.size()];
+            for (int block = 0; block < on.length; block++) {
+                on[block] = state.below(block);
+            }
+            states[root] = on;
+        }
+        return root;
+    }
+
+    // Adds the node reached from parentNode by move, with the fingerprint and heuristic the child has, and returns its index
+    public int add(int parentNode, long fingerprint, Move move, int childH) {
+        return add(parentNode, fingerprint, move, g[parentNode] + 1, childH);
+    }
+
+    private int add(int parentNode, long fingerprint, Move move, int childG, int childH) {
+        if (size == parent.length) {
+            grow();
+        }
+        int node = size++;
+        parent[node] = parentNode;
+        if (move != null) {
+            block[node] = (short) move.block();
+            from[node] = (short) move.from();
+            to[node] = (short) move.to();
+        }
+        g[node] = childG;
+        h[node] = childH;
+        hash[node] = fingerprint;
+        if (states != null && move != null) {
+            int[] on = states[parentNode].clone();
+            on[move.block()] = move.to();
+            states[node] = on;
+        }
+        return node;
+    }
+
+    public int g(int node) {
+        return g[node];
+    }
+
+    // Returns the block the move into the node moved, or -1 for the root
+    public int movedBlock(int node) {
+        return parent[node] == NONE ? -1 : block[node];
+    }
+
+    public int h(int node) {
+        return h[node];
+    }
+
+    public int f(int node) {
+        return g[node] + h[node];
+    }
+
+    // Returns the number of nodes stored
+    public int size() {
+        return size;
+    }
+
+    // Returns the bytes held by the node arrays and the index
+    public long memoryBytes() {
+        long bytes = (long) parent.length * (Integer.BYTES * 3 + Short.BYTES * 3 + Long.BYTES) + (long) index.length * Integer.BYTES;
+        if (states != null && size > 0) {
+            bytes += (long) states.length * Integer.BYTES + (long) size * (16 + states[0].length * Integer.BYTES);
+        }
+        return bytes;
+    }
+
+    // Returns the indexed node with the fingerprint the child of parentNode by move has, or NONE (-1)
+    public int find(int parentNode, Move move, long fingerprint) {
+        int mask = index.length - 1;
+        for (int slot = slotOf(fingerprint, mask); index[slot] != 0; slot = (slot + 1) & mask) {
+            int node = index[slot] - 1;
+            if (hash[node] == fingerprint && (states == null || isChild(node, parentNode, move))) {
+                return node;
+            }
+        }
+        return NONE;
+    }
+
+    // Makes the node the indexed node of its fingerprint, replacing the one found before
+    public void index(int node) {
+        int mask = index.length - 1;
+        int slot = slotOf(hash[node], mask);
+        for (; index[slot] != 0; slot = (slot + 1) & mask) {
+            int known = index[slot] - 1;
+            if (hash[known] == hash[node] && (states == null || Arrays.equals(states[known], states[node]))) {
+                index[slot] = node + 1;
+                return;
+            }
+        }
+        index[slot] = node + 1;
+        indexed++;
+        if (indexed > index.length - (index.length >>> 2)) {
+            resizeIndex();
+        }
+    }
+
+    /*
+    Walks the working state to the node by unmaking and making moves, and sets its h. The state must be
+    the one the root was added for, or a state that was only ever changed by moveTo.
+    */
+    public void moveTo(State state, int node) {
+        int up = at == NONE ? 0 : at; // A fresh working state is at the root
+        int target = node;
+        int depth = 0;
+        while (g[up] > g[target]) {
+            state.unmakeMove(moveOf(up));
+            up = parent[up];
+        }
+        while (g[target] > g[up]) {
+            push(depth++, target);
+            target = parent[target];
+        }
+        while (up != target) {
+            state.unmakeMove(moveOf(up));
+            up = parent[up];
+            push(depth++, target);
+            target = parent[target];
+        }
+        while (depth > 0) {
+            state.makeMove(moveOf(down[--depth]));
+        }
+        state.setH(h[node]);
+        state.setG(g[node]);
+        at = node;
+    }
+
+    // Builds the full states from start to the node by replaying the moves, each state referencing the one before
+    public void buildPath(State start, int node, List<State> path) {
+        int length = g[node];
+        Move[] moves = new Move[length];
+        for (int n = node, i = length - 1; i >= 0; n = parent[n], i--) {
+            moves[i] = moveOf(n);
+        }
+        State state = start;
+        path.add(state);
+        for (Move move : moves) {
+            state = state.applyMove(move);
+            path.add(state);
+        }
+    }
+
+    // Checks whether the node has the on[] array of the child of parentNode by move
+    private boolean isChild(int node, int parentNode, Move move) {
+        int[] on = states[node];
+        int[] parentOn = states[parentNode];
+        for (int block = 0; block < on.length; block++) {
+            if (on[block] != (block == move.block() ? move.to() : parentOn[block])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Move moveOf(int node) {
+        return new Move(block[node], from[node], to[node]);
+    }
+
+    private void push(int depth, int node) {
+        if (depth == down.length) {
+            down = Arrays.copyOf(down, depth * 2);
+        }
+        down[depth] = node;
+    }
+
+    private void grow() {
+        int capacity = parent.length * 2;
+        parent = Arrays.copyOf(parent, capacity);
+        block = Arrays.copyOf(block, capacity);
+        from = Arrays.copyOf(from, capacity);
+        to = Arrays.copyOf(to, capacity);
+        g = Arrays.copyOf(g, capacity);
+        h = Arrays.copyOf(h, capacity);
+        hash = Arrays.copyOf(hash, capacity);
+        if (states != null) {
+            states = Arrays.copyOf(states, capacity);
+        }
+    }
+
+    private void resizeIndex() {
+        int[] old = index;
+        index = new int[old.length * 2];
+        int mask = index.length - 1;
+        for (int entry : old) {
+            if (entry == 0) continue;
+            int slot = slotOf(hash[entry - 1], mask);
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = entry;
+        }
+    }
+
+    private static int slotOf(long fingerprint, int mask) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+}
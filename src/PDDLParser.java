@@ -1,15 +1,30 @@
 import java.io.*;
-import java.util.ArrayList;
-import java.util.regex.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.Comparator;
 
 public class PDDLParser{
     private final String filename;
-    private static ArrayList<Block> Blocks;
+    private final String text; //Problem given inline instead of as a file in Problems/, or null
+    private final ArrayList<Block> Blocks = new ArrayList<>(); //Block names, the index of a name is its block id
+    private final Map<String, Integer> blockIds = new HashMap<>(); //Interned block names
 
     public PDDLParser(String filename) {
-        this.filename = filename;
+        this(filename, null);
+    }
+
+    // Parses the problem text itself, such as one sent to the server mode; name only appears in errors
+    public PDDLParser(String name, String text) {
+        this.filename = name;
+        this.text = text;
     }
 
     /*
@@ -17,367 +32,454 @@ public class PDDLParser{
     2 States. The Initial State and the Final State. The format of the files to be parsed are .pddl
     referring to the blocks world problem https://www.cs.colostate.edu/meps/repository/aips2000.html#blocks
 
-    First of all the parser discards the first 2 lines of the file, which are irrelevant to the solution.
-    After, the parser reads the objects until he finds ")", and appends them to String. The String gets
-    filtered, so to have only the names and spaces. Because of some harder problems for example
-    probBLOCKS-50-0.pddl, the objects are in two lines and spaces appear between them, so we have to check
-    if the object is null when we append them into a list.
-
-    In the initial state, we parse until (HANDEMPTY) and sort the Blocks on CLEAR, ONTABLE and ON.
-    For the ON blocks, I used a UniqueSet in order to remove duplicates. In order to create substacks
-    as they should be, I read ON after it was created, until i found an object which is on table. Then
-    i reversed the set and push them into a substack. I did this until the HashSet on was read. But also
-    there is the possibility of some Blocks to not be on the state yet. The ones that are CLEAR and ONTABLE.
-    So i took the intersection of the Lists and for each one of these Blocks, i created a new substack to
-    append them to the state.
-
-    For the final state it's pretty straight forward. We just need to read the rest of the file, filter the
-    output and reverse each object and add to a new state.
+    The file is read in a single pass by a Tokenizer, which streams it through a fixed buffer and splits
+    it into parentheses and symbols, so neither the line layout nor the size of the file matters. The
+    sections of the define form are told apart by their keyword, in any case. Facts are resolved against
+    the blocks as they are read, so (:objects ...) must come before (:init ...) and (:goal ...):
+    - (:objects ...) interns every name once to a dense int id (its index in Blocks) through a hash map,
+      and from then on blocks are handled only through these ids;
+    - (:init ...) and (:goal ...) are lists of facts, the goal optionally wrapped in (and ...);
+    - every other section, such as (problem ...) and (:domain ...), is skipped.
+
+    A state is an int array where on[i] is the id of the block that block i sits on, or State.TABLE.
+    Every (ON X Y) fact sets on[X] = Y directly. Blocks that are ONTABLE, or that are not mentioned at
+    all, keep the default State.TABLE, so the towers come out of the facts in linear time, whatever
+    order they appear in. CLEAR and HANDEMPTY carry no extra information once every ON fact is known.
+    The goal is read the same way into the facts of a Goal, except that blocks without an ON or ONTABLE
+    fact are left free (Goal.ANY) instead of being put on the table. Facts no state can satisfy throw an
+    IllegalArgumentException: a block placed by two facts, and initial facts that put two blocks on one
+    block or stack a tower on itself. The Goal checks its own facts the same way.
     */
 
     public Problem parseInputFile(){
-        try {
-            StringBuilder objects = new StringBuilder(); //StringBuilder to read Objects as Strings
-            StringBuilder initial_statement = new StringBuilder(); //StringBuilder to read INIT statement
-            StringBuilder final_statement = new StringBuilder(); //StringBuilder to read FINAL statement
-            FileReader fr = new FileReader("Problems/" + filename); //Initialize Filereader & BufferedReader
-            BufferedReader br = new BufferedReader(fr);
-            Blocks = new ArrayList<>(); //ArrayList of Blocks to store Blocks after they are parsed
-            List<Block> clearList = new ArrayList<>();
-            List<Block> onTableList = new ArrayList<>();
-            Set<Block> uniqueSetInit = new LinkedHashSet<>();
-            Set<Block> uniqueSetFinal = new LinkedHashSet<>();
-
-            for(int i = 0; i < 2; i++)
-                br.readLine();
-            while(true){
-                String line = br.readLine();
-
-                objects.append(line);
-                if(line.contains(")"))
-                    break;
-            }
-            objects.replace(0, 10, "").replace(objects.length()-1, objects.length(), "");
-            String objectData = objects.toString().trim();
-            String[] objectNames = objectData.split(" ");
-
-            for(String name:objectNames)
-                if(!name.isEmpty())
-                    Blocks.add(new Block(name));
-            while(true){
-                String line = br.readLine();
-                initial_statement.append(line.trim()).append(" ");
-                if(line.contains("(HANDEMPTY))"))
-                    break;
-            }
-            String initData = initial_statement.toString();
-            String pattern = "(CLEAR|ONTABLE|ON)\\s+([\\w]+)(?:\\s+([\\w]+))?";
-            Pattern r = Pattern.compile(pattern);
-            Matcher m = r.matcher(initData);
-            while (m.find()) {
-                String command = m.group(1);
-                String firstObject = m.group(2);
-                String secondObject = m.group(3);
-
-                switch (command) {
-                    case "CLEAR" -> {
-                        Block block = getBlockByName(Blocks, firstObject);
-                        clearList.add(block);
-                    }
-                    case "ONTABLE" -> {
-                        Block block = getBlockByName(Blocks, firstObject);
-                        onTableList.add(block);
-                    }
-                    case "ON" -> {
-                        // For ON, add both objects separately
-                        Block block1 = getBlockByName(Blocks, firstObject);
-                        Block block2 = getBlockByName(Blocks, secondObject);
-                        uniqueSetInit.add(block1);
-                        uniqueSetInit.add(block2);
-                    }
+        try (Tokenizer tokens = text == null ? new Tokenizer(Paths.get("Problems", filename)) : new Tokenizer(filename, text)) {
+            boolean objects = false;
+            int[] initial = null;
+            int[] goal = null;
+            tokens.expect("(");
+            tokens.expectSymbol("define");
+            for (String token = tokens.next(); !token.equals(")"); token = tokens.next()) {
+                if (!token.equals("(")) {
+                    throw new IllegalArgumentException("Expected a section of the problem but found: " + token);
                 }
-            }
-            State Initial_State = new State();
-            int prev = 0;
-            for(Block block: onTableList){
-                int index = getIndexOf(uniqueSetInit, block);
-                if(index != -1){
-                    Substack stack = new Substack();
-                    for(int i = index; i >= prev; i--){
-                        stack.push(getElementAtIndex(uniqueSetInit, i));
-                    }
-                    prev = index + 1;
-                    Initial_State.addStack(stack);
+                String section = tokens.symbol();
+                if (section.equalsIgnoreCase(":objects")) {
+                    parseObjects(tokens);
+                    objects = true;
+                } else if (!objects && (section.equalsIgnoreCase(":init") || section.equalsIgnoreCase(":goal"))) {
+                    throw new IllegalArgumentException("The :objects section must come before " + section + " in " + filename);
+                } else if (section.equalsIgnoreCase(":init")) {
+                    initial = parseFacts(tokens, State.TABLE);
+                    checkTowers(initial);
+                } else if (section.equalsIgnoreCase(":goal")) {
+                    goal = parseGoal(tokens);
+                } else {
+                    tokens.skipRest();
                 }
             }
-            List<Block> intersection = new ArrayList<>(clearList);
-            intersection.retainAll(onTableList);
-            for(Block block: intersection){
-                Substack stack = new Substack();
-                stack.push(block);
-                Initial_State.addStack(stack);
+            if (initial == null || goal == null) {
+                throw new IllegalArgumentException("Missing " + (initial == null ? ":init" : ":goal") + " in " + filename);
+            }
+            return new Problem(new State(initial), new Goal(goal), Blocks);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Interns the object names up to the closing parenthesis, skipping "- type" annotations
+    private void parseObjects(Tokenizer tokens) throws IOException {
+        for (String name = tokens.next(); !name.equals(")"); name = tokens.next()) {
+            if (name.equals("-")) {
+                tokens.symbol(); // The type of the names before it, always a block here
+            } else if (!blockIds.containsKey(name)) {
+                blockIds.put(name, Blocks.size());
+                Blocks.add(new Block(name));
             }
+        }
+    }
 
-            while(true){
-                String line = br.readLine();
-                if(line != null){
-                    final_statement.append(line.trim()).append(" ");
-                }else {
-                    break;
-                }
+    // Parses the goal, a single fact or (and fact...), and the parenthesis closing the section
+    private int[] parseGoal(Tokenizer tokens) throws IOException {
+        tokens.expect("(");
+        String head = tokens.symbol();
+        int[] below;
+        if (head.equalsIgnoreCase("and")) {
+            below = parseFacts(tokens, Goal.ANY);
+        } else {
+            below = newOn(Goal.ANY);
+            parseFact(head, tokens, below, new boolean[below.length]);
+        }
+        tokens.expect(")");
+        return below;
+    }
+
+    // Builds the on[] array of a state from the facts up to the closing parenthesis of the section, unmentioned blocks at unknown
+    private int[] parseFacts(Tokenizer tokens, int unknown) throws IOException {
+        int[] on = newOn(unknown);
+        boolean[] placed = new boolean[on.length];
+        for (String token = tokens.next(); !token.equals(")"); token = tokens.next()) {
+            if (!token.equals("(")) {
+                throw new IllegalArgumentException("Expected a fact but found: " + token);
             }
-            String finalData = final_statement.toString();
-            pattern = "(CLEAR|ONTABLE|ON)\\s+([\\w]+)(?:\\s+([\\w]+))?";
-            r = Pattern.compile(pattern);
-            m = r.matcher(finalData);
-            while (m.find()) {
-                String command = m.group(1);
-                String firstObject = m.group(2);
-                String secondObject = m.group(3);
-                 if (command.equals("ON")) {
-                    // For ON, add both objects separately
-                     Block block1 = getBlockByName(Blocks, firstObject);
-                     Block block2 = getBlockByName(Blocks, secondObject);
-                     uniqueSetFinal.add(block1);
-                     uniqueSetFinal.add(block2);
+            parseFact(tokens.symbol(), tokens, on, placed);
+        }
+        return on;
+    }
+
+    // Applies the fact whose predicate was just read, up to and including its closing parenthesis
+    private void parseFact(String predicate, Tokenizer tokens, int[] on, boolean[] placed) throws IOException {
+        if (predicate.equalsIgnoreCase("on")) {
+            int block = getBlockId(tokens.symbol());
+            place(on, placed, block, getBlockId(tokens.symbol()));
+            tokens.expect(")");
+        } else if (predicate.equalsIgnoreCase("ontable")) {
+            place(on, placed, getBlockId(tokens.symbol()), State.TABLE);
+            tokens.expect(")");
+        } else {
+            tokens.skipRest(); // CLEAR and HANDEMPTY leave on[] as it is
+        }
+    }
+
+    // Puts the block on below, rejecting a second ON or ONTABLE fact for the same block
+    private void place(int[] on, boolean[] placed, int block, int below) {
+        if (placed[block]) {
+            throw new IllegalArgumentException("Two facts place block " + Blocks.get(block) + " in " + filename);
+        }
+        placed[block] = true;
+        on[block] = below;
+    }
+
+    /*
+    Rejects initial facts that no state can satisfy, which would leave the walks down the towers
+    in State without an end: two blocks on the same block, or a tower that stands on itself. Every
+    block is visited once on its way down to the table, so the check takes linear time.
+    */
+    private void checkTowers(int[] on) {
+        int n = on.length;
+        boolean[] covered = new boolean[n];
+        for (int block = 0; block < n; block++) {
+            int below = on[block];
+            if (below != State.TABLE) {
+                if (covered[below]) {
+                    throw new IllegalArgumentException("The :init facts put two blocks on " + Blocks.get(below) + " in " + filename);
                 }
+                covered[below] = true;
             }
-            State Final_State = new State();
-            Substack stack = new Substack();
-            for(int i = uniqueSetFinal.size() - 1; i >= 0; i--){
-                Block block = getElementAtIndex(uniqueSetFinal, i);
-                stack.push(block);
+        }
+        byte[] seen = new byte[n]; // 1 while on the tower being followed, 2 once it is known to reach the table
+        for (int start = 0; start < n; start++) {
+            int b = start;
+            while (b != State.TABLE && seen[b] == 0) {
+                seen[b] = 1;
+                b = on[b];
+            }
+            if (b != State.TABLE && seen[b] == 1) {
+                throw new IllegalArgumentException("The :init facts stack " + Blocks.get(b) + " on top of itself in " + filename);
+            }
+            for (b = start; b != State.TABLE && seen[b] == 1; b = on[b]) {
+                seen[b] = 2;
             }
-            Final_State.addStack(stack);
-            //Final_State.addStacksToInitialize(Blocks);
-            br.close();
-            return new Problem(Initial_State, Final_State);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
     }
 
+    // Returns an on[] array for the blocks declared so far, with every block at unknown
+    private int[] newOn(int unknown) {
+        int[] on = new int[Blocks.size()];
+        Arrays.fill(on, unknown);
+        return on;
+    }
+
     /*
     Given a list of states representing a path, this method writes the moves
-    between each state in the path to the specified output file.
+    between each state in the path to the specified output file. Every state
+    built by State.applyMove carries the move that produced it, so the moves are
+    streamed straight from the path in time linear in its length, and block ids are
+    translated back to their names only here. The plan is written to a temporary
+    file first and then moved over the output file, so a run that is stopped
+    while writing never leaves a half-written plan behind.
     */
-    public static void parseOutputFile(ArrayList<State> Path, String filename) {
+    public static void parseOutputFile(ArrayList<State> Path, String filename, List<Block> blocks) {
         if (Path.size() < 2) {
             System.out.println("Error: Path must contain at least two states to compute moves.");
             return;
         }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("Output/" + filename))) {
+        java.nio.file.Path temporary = Paths.get("Output", filename + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary)) {
             // Iterate through each pair of consecutive states
             for (int i = 0; i < Path.size() - 1; i++) {
-                State first = Path.get(i);
-                State second = Path.get(i + 1);
-
-                // Get the move action from the first state that led to the second state
-                //String move = secondb.findMove();
-                // Write the move to the output file
-                String move = PDDLParser.findMove(first,second);
-                writer.write(move);
-                writer.newLine(); // Add a newline after each move
+                writeMove(writer, moveBetween(Path.get(i), Path.get(i + 1)), blocks);
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        replaceOutputFile(temporary, Paths.get("Output", filename));
     }
 
     /*
-    Finds the move required to transform one state into the next state in a path.
-    After filtering equal substacks, in a state we have 3 possible outcomes.
-
-    1) The first state has 2 substacks and the second state has 2 substacks:
-
-    [A,B,C]
-    [D]
-
-    To the state:
-
-    [A,B]
-    [C,D]
-
-    2) The first state has 1 substack and the second state has 2 substacks
+    Writes a plan that is already given as moves, such as the one of the DomainPlanner, to the output
+    file. No states have to be built or compared, so this takes time linear in the plan length.
+    */
+    public static void writePlan(List<Move> moves, String filename, List<Block> blocks) {
+        java.nio.file.Path temporary = Paths.get("Output", filename + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary)) {
+            for (Move move : moves) {
+                writeMove(writer, move, blocks);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        replaceOutputFile(temporary, Paths.get("Output", filename));
+    }
 
-    [A,B,C,D]
+    /*
+    Reads a plan written by parseOutputFile or writePlan back into moves, translating the block names
+    to the ids of the problem. Returns null if the file does not exist or a line is not a move between
+    blocks of the problem, so callers can tell a missing plan from an empty one.
+    */
+    static List<Move> readPlan(String filename, List<Block> blocks) {
+        java.nio.file.Path file = Paths.get("Output", filename);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Map<String, Integer> ids = new HashMap<>();
+        for (int id = 0; id < blocks.size(); id++) {
+            ids.put(blocks.get(id).name(), id);
+        }
+        ids.put("table", State.TABLE);
+        List<Move> moves = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (!line.startsWith("MOVE(") || !line.endsWith(")")) {
+                    return null;
+                }
+                String[] names = line.substring(5, line.length() - 1).split(", ");
+                if (names.length != 3 || !ids.containsKey(names[0]) || !ids.containsKey(names[1]) || !ids.containsKey(names[2])) {
+                    return null;
+                }
+                moves.add(new Move(ids.get(names[0]), ids.get(names[1]), ids.get(names[2])));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return moves;
+    }
 
-    To the state:
+    // Writes one MOVE(X, Y, Z) line, piece by piece
+    private static void writeMove(BufferedWriter writer, Move move, List<Block> blocks) throws IOException {
+        writer.write("MOVE(");
+        writer.write(blockName(move.block(), blocks));
+        writer.write(", ");
+        writer.write(blockName(move.from(), blocks));
+        writer.write(", ");
+        writer.write(blockName(move.to(), blocks));
+        writer.write(')');
+        writer.newLine();
+    }
 
-    [A,B,C]
-    [D]
+    /*
+    Returns the move from one state of a path to the next. Usually the next state was built from the
+    first one and carries the move. The second half of a bidirectional plan was built from the goal
+    towards the meeting state, so there the first state carries the move in reverse. Only states without
+    recorded moves are compared block by block.
+    */
+    private static Move moveBetween(State first, State second) {
+        if (second.getParent() == first && second.getMove() != null) {
+            return second.getMove();
+        }
+        if (first.getParent() == second && first.getMove() != null) {
+            return first.getMove().inverse();
+        }
+        return diff(first, second);
+    }
 
-    3) The first state has 2 substacks and the second state has 1 substack.
+    // Moves a finished temporary plan over the output file, atomically where the file system allows it
+    static void replaceOutputFile(java.nio.file.Path temporary, java.nio.file.Path target) {
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-    [A]
-    [B,C,D]
+    // Returns the move between two states that differ by one move, or null if they are equal
+    private static Move diff(State first, State second) {
+        for (int block = 0; block < first.size(); block++) {
+            int from = first.below(block);
+            int to = second.below(block);
+            if (from != to) {
+                return new Move(block, from, to);
+            }
+        }
+        return null;
+    }
 
-    To the state:
+    // Translates a block id (or State.TABLE) back to the name used in the output file
+    private static String blockName(int block, List<Block> blocks) {
+        return block == State.TABLE ? "table" : blocks.get(block).name();
+    }
 
-    [B,C,D,A]
+    /*
+    Returns the interned id of the block with the given name.
+    Throws if the name was not declared in the objects of the problem.
+    */
+    public int getBlockId(String name) {
+        Integer id = blockIds.get(name);
+        if (id == null) {
+            throw new IllegalArgumentException("Unknown block: " + name);
+        }
+        return id;
+    }
 
-    Returns a string representing the move (e.g., "MOVE(A, B, C)").
+    /*
+    Splits a PDDL file into tokens: "(", ")" and symbols, which are runs of any other characters that are not
+    whitespace. Comments from ';' to the end of the line are skipped. The file is read through a FileChannel
+    into a fixed byte array that the scanner walks directly, and a symbol is decoded straight from the array,
+    so memory does not grow with the size of the file and no character is copied twice.
     */
+    private static final class Tokenizer implements Closeable {
+        private final String source; // The file or name of the text, for errors
+        private final ReadableByteChannel channel;
+        private byte[] bytes = new byte[1 << 16];
+        private int position; // Next byte to scan
+        private int limit; // End of the bytes read so far
+
+        Tokenizer(java.nio.file.Path path) throws IOException {
+            this.source = path.toString();
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
 
-    public static String findMove(State first, State second){
-        List<Substack> firstState = first.getState();
-        List<Substack> secondState = second.getState();
-        String MoveBlock = "";
-        String FromBlock = "";
-        String ToBlock = "";
-
-
-        // Create deep copies of the original state lists to work with
-        List<Substack> tempState1 = new ArrayList<>(firstState);
-        List<Substack> tempState2 = new ArrayList<>(secondState);
-
-        // Now pass the copies to filterEqualSubstacks
-        PDDLParser.filterEqualSubstacks(tempState1, tempState2);
-        if(firstState.size() == secondState.size()) {
-            for (int i = 0; i < Math.min(tempState1.size(), tempState2.size()); i++) {
-                Substack initStack = tempState1.get(i);
-                Substack goalStack = tempState2.get(i);
-
-                // Compare the sizes and determine the move
-                if (initStack.size() > goalStack.size()) {
-                    MoveBlock = initStack.peek().toString();
-                    if (initStack.size() == 1) {
-                        FromBlock = "table";
-                    } else {
-                        FromBlock = initStack.getBlockAtIndex(initStack.size() - 2).toString();
-                    }
+        Tokenizer(String name, String text) {
+            this.source = name;
+            this.channel = Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        /*
+        Returns the next token. At the end of the file it keeps returning ")", so lists left open at the end
+        count as closed: probBLOCKS-3-0.pddl lacks its last parenthesis. A file that ends too early is still
+        caught by the sections found missing.
+        */
+        String next() throws IOException {
+            while (true) {
+                if (position == limit && !fill(position)) {
+                    return ")";
+                }
+                byte c = bytes[position];
+                if (c == ';') {
+                    skipLine();
+                } else if (c <= ' ') {
+                    position++;
                 } else {
-                    if (goalStack.size() == 1) {
-                        ToBlock = "table";
-                    } else {
-                        ToBlock = goalStack.getBlockAtIndex(goalStack.size()-2).toString();
-                    }
+                    break;
                 }
             }
-        }else{
-            if(tempState1.size() < tempState2.size()){
-                Substack stackOfInterest = new Substack(new State(tempState1).findLargestSubstack());
-                MoveBlock = stackOfInterest.peek().toString();
-                if(stackOfInterest.size() == 1){
-                    FromBlock = "table";
-                }else{
-                    FromBlock = stackOfInterest.getBlockAtIndex(stackOfInterest.size()-2).toString();
-                }
-                stackOfInterest.pop();
-                for(Substack st: tempState2){
-                    if(!st.equals(stackOfInterest)){
-                        if(st.size()==1){
-                            ToBlock = "table";
-                        }else{
-                            ToBlock = st.getBlockAtIndex(st.size()-2).toString();
-                        }
-                    }
-                }
-            }else{
-                Substack stackOfInterest = new Substack(new State(tempState2).findLargestSubstack());
-                Substack secondStackOfInterest = new Substack();
-                Block Move = stackOfInterest.peek();
-                MoveBlock = Move.toString();
-                if (stackOfInterest.size() == 1){
-                    ToBlock = "table";
-                }else{
-                    ToBlock = stackOfInterest.getBlockAtIndex(stackOfInterest.size()-2).toString();
-                }
-                for(Substack s: tempState1){
-                    if(s.peek().equals(Move)){
-                        secondStackOfInterest = s;
-                        break;
+            byte c = bytes[position];
+            if (c == '(' || c == ')') {
+                position++;
+                return c == '(' ? "(" : ")";
+            }
+            int start = position;
+            while (true) {
+                if (position == limit) {
+                    int scanned = position - start;
+                    boolean more = fill(start);
+                    start = 0; // fill moved the symbol to the front of the array, also at the end of the file
+                    position = scanned;
+                    if (!more) {
+                        break; // The symbol ends with the file
                     }
+                    continue;
                 }
-                if(secondStackOfInterest.size() == 1){
-                    FromBlock = "table";
+                c = bytes[position];
+                if (c <= ' ' || c == '(' || c == ')' || c == ';') {
+                    break;
                 }
+                position++;
             }
+            return new String(bytes, start, position - start, StandardCharsets.UTF_8);
         }
-        return "MOVE(" + MoveBlock + ", " + FromBlock + ", " + ToBlock + ")";
-    }
 
-    /*
-   Removes equal substacks from the two lists of substacks. This is used to filter out
-   redundant stacks when comparing the initial and final states. Having first state and second state,
-   if a block is moved, then only two substacks are changed. All the other ones stay the same.
-   So the logic is to remove all the equal substacks of the states and to compare only the ones that
-   differ.
-   */
-    public static void filterEqualSubstacks(List<Substack> firstStateSubstacks, List<Substack> secondStateSubstacks) {
-        // Iterate over all substacks in the first state
-        for (int i = 0; i < firstStateSubstacks.size(); i++) {
-            Substack firstStack = firstStateSubstacks.get(i);
-
-            // Compare it with all substacks in the second state
-            for (int j = 0; j < secondStateSubstacks.size(); j++) {
-                Substack secondStack = secondStateSubstacks.get(j);
-
-                // Check if the current substacks are equal
-                if (firstStack.equals(secondStack)) {
-                    // Remove the matching substack from both lists
-                    secondStateSubstacks.remove(j);
-                    firstStateSubstacks.remove(i);
-
-                    // Adjust the index to account for the shift caused by removal
-                    i--; // Decrement i to recheck the current position in firstStateSubstacks
-                    // Break out of the inner loop as we found and removed a matching pair
-                    break;
-                }
+        // Returns the next token, which must be a symbol
+        String symbol() throws IOException {
+            String token = next();
+            if (token.equals("(") || token.equals(")")) {
+                throw new IllegalArgumentException("Expected a name in " + source + " but found: " + token);
             }
+            return token;
         }
-    }
 
-    /*
-    Searches the list of blocks to find a block by its name.
-    Returns the Block object with the specified name, or null if not found.
-    */
-    public static Block getBlockByName(ArrayList<Block> blocks, String name) {
-        for (Block block : blocks) {
-            if (block.name().equals(name)) {
-                return block;
+        // Reads the next token, which must be the given parenthesis
+        void expect(String parenthesis) throws IOException {
+            String token = next();
+            if (!token.equals(parenthesis)) {
+                throw new IllegalArgumentException("Expected " + parenthesis + " in " + source + " but found: " + token);
             }
         }
-        return null; // Return null if no block found with the given name
-    }
 
-    /*
-    Returns the index of the specified block in the given set of blocks.
-    If the block is not found, it returns -1.
-    */
-    public static int getIndexOf(Set<Block> set, Block element) {
-        int index = 0;
-        // Iterate over the LinkedHashSet
-        for (Block block : set) {
-            if (block.equals(element)) {
-                return index; // Return the index when element is found
+        // Reads the next token, which must be the given keyword in any case
+        void expectSymbol(String keyword) throws IOException {
+            String token = next();
+            if (!token.equalsIgnoreCase(keyword)) {
+                throw new IllegalArgumentException("Expected " + keyword + " in " + source + " but found: " + token);
             }
-            index++;
         }
-        return -1; // Return -1 if element is not found
-    }
 
-    /*
-    Retrieves the block at the specified index from the set.
-    Returns the block, or null if the index is out of bounds.
-    */
-    public static Block getElementAtIndex(Set<Block> set, int index) {
-        int currentIndex = 0;
-        for (Block element : set) {
-            if (currentIndex == index) {
-                return element;
+        // Skips the tokens up to and including the parenthesis that closes the list being read
+        void skipRest() throws IOException {
+            for (int depth = 1; depth > 0; ) {
+                String token = next();
+                if (token.equals("(")) {
+                    depth++;
+                } else if (token.equals(")")) {
+                    depth--;
+                }
             }
-            currentIndex++;
         }
-        return null; // If not found
-    }
 
-    /*
-    Returns an ArrayList<Block >of all blocks parsed in the
-    parser.
-     */
-    public static ArrayList<Block> getBlocks(){
-        return Blocks;
+        // Skips a comment up to the end of its line
+        private void skipLine() throws IOException {
+            while (position < limit || fill(position)) {
+                if (bytes[position++] == '\n') {
+                    return;
+                }
+            }
+        }
+
+        /*
+        Reads more of the file, keeping the bytes from keep on at the front of the array (a symbol being
+        scanned) and growing the array if they fill it. Returns false at the end of the file.
+        */
+        private boolean fill(int keep) throws IOException {
+            int kept = limit - keep;
+            if (kept == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            System.arraycopy(bytes, keep, bytes, 0, kept);
+            position -= keep;
+            limit = kept;
+            int read;
+            do {
+                read = channel.read(ByteBuffer.wrap(bytes, limit, bytes.length - limit));
+            } while (read == 0);
+            if (read == -1) {
+                return false;
+            }
+            limit += read;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
     }
-}
\ No newline at end of file
+}
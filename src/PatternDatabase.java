@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/*
+    Additive pattern database heuristic.
+
+    The blocks are split into disjoint patterns of a few blocks each, taken as consecutive chunks of the
+    goal towers read from the table up, so blocks that depend on each other in the goal end up in the same
+    pattern. A pattern only sees its own blocks: for each of them it records whether it sits on the table,
+    on another block of the pattern, or on some block outside the pattern (OTHER). Any real move moves a
+    single block and is also a legal move of the projection of that block's pattern, so the number of moves
+    of the abstract problem is a lower bound on the moves of the pattern's blocks in the real one. Since
+    the patterns are disjoint, the lower bounds of all patterns can be added and the sum is still admissible.
+
+    For a pattern of k blocks every block has k + 1 possible values (table, OTHER, or one of the k - 1
+    other blocks), so an abstract state is a number below (k + 1)^k and the exact distance of every
+    abstract state to the projected goal is stored in a byte array, filled by a breadth-first search
+    backward from the goal (abstract moves can always be undone, so backward and forward are the same).
+
+    The table of a pattern only depends on the projected goal, so it is stored under that abstract goal in
+    PatternDatabases/ and memory-mapped from there on later runs, which skips the search. Patterns with the
+    same projected goal, such as the chunks in the middle of a single goal tower, share one table.
+*/
+public class PatternDatabase {
+    public static final int MAX_PATTERN_SIZE = 7; // 8^7 states, 2 MB per table
+    private static final Path DIRECTORY = Paths.get("PatternDatabases");
+    private static final int TABLE_VALUE = 0;
+    private static final int OTHER_VALUE = 1;
+    private static final int UNREACHED = 0xFF;
+
+    private final int[][] patterns; // Block ids of every pattern
+    private final int[] patternOf; // Pattern of every block
+    private final int[] positionOf; // Index of every block within its pattern
+    private final ByteBuffer[] tables; // Abstract distances of every pattern, shared between equal patterns
+    private int built; // Tables built by a backward search in this run
+    private int loaded; // Tables mapped from PatternDatabases/
+
+    private PatternDatabase(int[][] patterns, int blocks) {
+        this.patterns = patterns;
+        this.patternOf = new int[blocks];
+        this.positionOf = new int[blocks];
+        this.tables = new ByteBuffer[patterns.length];
+        for (int p = 0; p < patterns.length; p++) {
+            for (int i = 0; i < patterns[p].length; i++) {
+                patternOf[patterns[p][i]] = p;
+                positionOf[patterns[p][i]] = i;
+            }
+        }
+    }
+
+    /**
+     * Builds or loads the tables for the goal of the problem.
+     *
+     * @param problem The problem whose goal the tables are for.
+     * @param patternSize The number of blocks per pattern, at most MAX_PATTERN_SIZE.
+     * @return The pattern database, ready for lookups.
+     * @throws IllegalArgumentException If the goal leaves blocks free: the tables are built backward from a single goal state.
+     */
+    public static PatternDatabase forProblem(Problem problem, int patternSize) {
+        if (!problem.getGoal().isComplete()) {
+            throw new IllegalArgumentException("The pattern database needs a goal with a fact for every block");
+        }
+        State goal = problem.getFinal();
+        int n = goal.size();
+        // Chunk the goal towers, each read from the table up, into patterns of patternSize blocks
+        List<int[]> patterns = new ArrayList<>();
+        int[] chunk = new int[patternSize];
+        int filled = 0;
+        for (int[] tower : goal.getTowers()) {
+            for (int block : tower) {
+                chunk[filled++] = block;
+                if (filled == patternSize) {
+                    patterns.add(chunk.clone());
+                    filled = 0;
+                }
+            }
+        }
+        if (filled > 0) {
+            patterns.add(Arrays.copyOf(chunk, filled));
+        }
+
+        PatternDatabase database = new PatternDatabase(patterns.toArray(new int[0][]), n);
+        Map<String, ByteBuffer> shared = new HashMap<>();
+        for (int p = 0; p < database.patterns.length; p++) {
+            int[] pattern = database.patterns[p];
+            int goalIndex = database.index(p, goal.getState());
+            String key = "pdb-" + pattern.length + "-" + goalIndex + ".bin";
+            database.tables[p] = shared.computeIfAbsent(key, k -> database.table(k, pattern.length, goalIndex));
+        }
+        return database;
+    }
+
+    // Describes how many patterns there are and how many tables were built or mapped from disk
+    public String summary() {
+        return patterns.length + " patterns, " + built + " tables built, " + loaded + " tables loaded";
+    }
+
+    // Sums the abstract distances of all patterns
+    public int heuristic(State state) {
+        int[] on = state.getState();
+        int h = 0;
+        for (int p = 0; p < patterns.length; p++) {
+            h += tables[p].get(index(p, on)) & 0xFF;
+        }
+        return h;
+    }
+
+    // Returns how much the move changes the heuristic; only the pattern of the moved block is looked up
+    public int change(State parent, Move move) {
+        int p = patternOf[move.block()];
+        int k = patterns[p].length;
+        int i = positionOf[move.block()];
+        int before = index(p, parent.getState());
+        int weight = 1;
+        for (int j = 0; j < i; j++) {
+            weight *= k + 1;
+        }
+        int after = before + (value(p, i, move.to()) - value(p, i, move.from())) * weight;
+        return (tables[p].get(after) & 0xFF) - (tables[p].get(before) & 0xFF);
+    }
+
+    // Abstract state number of pattern p in the on[] array, the value of block i counting k + 1 times as much as that of i - 1
+    private int index(int p, int[] on) {
+        int[] pattern = patterns[p];
+        int index = 0;
+        for (int i = pattern.length - 1; i >= 0; i--) {
+            index = index * (pattern.length + 1) + value(p, i, on[pattern[i]]);
+        }
+        return index;
+    }
+
+    // Abstract value of block i of pattern p when it sits on below
+    private int value(int p, int i, int below) {
+        if (below == State.TABLE) {
+            return TABLE_VALUE;
+        }
+        if (patternOf[below] != p) {
+            return OTHER_VALUE;
+        }
+        return encode(i, positionOf[below]);
+    }
+
+    // Value of block i sitting on pattern block j (j != i), skipping i itself so that k + 1 values suffice
+    private static int encode(int i, int j) {
+        return j < i ? j + 2 : j + 1;
+    }
+
+    // Pattern block under block i for value v >= 2
+    private static int decode(int i, int v) {
+        return v - 2 < i ? v - 2 : v - 1;
+    }
+
+    // Maps the stored table for key, or builds and stores it first
+    private ByteBuffer table(String key, int k, int goalIndex) {
+        Path file = DIRECTORY.resolve(key);
+        long size = states(k);
+        try {
+            if (!Files.exists(file) || Files.size(file) != size) {
+                byte[] distances = build(k, goalIndex);
+                Files.createDirectories(DIRECTORY);
+                Path temporary = Files.createTempFile(DIRECTORY, key, ".tmp"); // Unique, batch jobs may build the same table at once
+                try (OutputStream out = Files.newOutputStream(temporary)) {
+                    out.write(distances);
+                }
+                try {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+                built++;
+            } else {
+                loaded++;
+            }
+            try (FileChannel channel = FileChannel.open(file)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return mapped; // Stays valid after the channel is closed
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int states(int k) {
+        int states = 1;
+        for (int i = 0; i < k; i++) {
+            states *= k + 1;
+        }
+        return states;
+    }
+
+    /*
+    Breadth-first search over the abstract states of a pattern of k blocks, starting at the goal.
+    A block can move when no pattern block sits on it, to the table, onto OTHER, or onto another pattern
+    block that nothing of the pattern sits on. Numbers that do not describe a valid arrangement (a block
+    under two others, or a cycle) are never reached and keep UNREACHED.
+    */
+    private static byte[] build(int k, int goalIndex) {
+        int states = states(k);
+        byte[] distances = new byte[states];
+        Arrays.fill(distances, (byte) UNREACHED);
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        distances[goalIndex] = 0;
+        queue[tail++] = goalIndex;
+
+        int[] weights = new int[k];
+        for (int i = 0, w = 1; i < k; i++, w *= k + 1) {
+            weights[i] = w;
+        }
+        int[] values = new int[k];
+        boolean[] covered = new boolean[k];
+        while (head < tail) {
+            int index = queue[head++];
+            int next = (distances[index] & 0xFF) + 1;
+            Arrays.fill(covered, false);
+            for (int i = 0, rest = index; i < k; i++, rest /= k + 1) {
+                values[i] = rest % (k + 1);
+                if (values[i] > OTHER_VALUE) {
+                    covered[decode(i, values[i])] = true;
+                }
+            }
+            for (int i = 0; i < k; i++) {
+                if (covered[i]) continue;
+                int base = index - values[i] * weights[i];
+                // Destinations: the table, OTHER, and every other clear pattern block
+                for (int j = -2; j < k; j++) {
+                    int value;
+                    if (j == -2) {
+                        value = TABLE_VALUE;
+                    } else if (j == -1) {
+                        value = OTHER_VALUE;
+                    } else if (j != i && !covered[j]) {
+                        value = encode(i, j);
+                    } else {
+                        continue;
+                    }
+                    if (value == values[i]) continue;
+                    int child = base + value * weights[i];
+                    if ((distances[child] & 0xFF) == UNREACHED) {
+                        distances[child] = (byte) next;
+                        queue[tail++] = child;
+                    }
+                }
+            }
+        }
+        return distances;
+    }
+}
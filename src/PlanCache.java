@@ -0,0 +1,394 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+    Plan cache, switched on with --cache: a problem that was solved before gets its stored plan back
+    instead of a new search.
+
+    Problems are keyed by a canonical fingerprint of their initial state and goal facts. The block ids of
+    a problem follow the order its objects are declared in, so both are first normalized by renumbering
+    the blocks in the order of their names. The same problem written with its objects or facts in another
+    order therefore has the same key. The normalized state, the goal facts and the plan, as (block,
+    destination) pairs in normalized ids, are all an entry holds.
+
+    The cache has two tiers. The last --cache-size plans that were used stay in memory in least recently
+    used order. Every plan is also written to PlanCache/ in a compact binary file (see writeEntry), which
+    later runs read on a memory miss. Before a stored plan is returned it is replayed on the initial
+    state: every move must take a clear block onto the table or onto another clear block, and the last
+    state must satisfy every goal fact. A plan that fails, or whose entry holds another problem under the
+    same 64-bit key, counts as a miss and is searched for again.
+
+    A plan from an algorithm that returns shortest plans (see Search.isOptimal) is stored under the key of
+    the problem and serves every request. Any other plan is stored under a key of the problem and its
+    algorithm, and only serves that algorithm, which would search its way to a plan of its own quality
+    anyway: a plan of depth-first search is never handed to A*, and asking breadth-first search for a
+    problem that best-first search solved before still searches. Every algorithm thus keeps a plan of its
+    own, so runs of depth and astar on the same problem do not replace each other's plans. Of two plans
+    under the same key the shorter one is kept.
+
+    The cache is shared by all runs of the JVM, such as the jobs of a batch, and counts its hits, misses
+    and evictions from memory for the summary of the run.
+*/
+public final class PlanCache {
+    private static final Path DIRECTORY = Paths.get("PlanCache");
+    private static final int MAGIC = 0x42575043; // "BWPC"
+    private static final int VERSION = 2;
+    private static PlanCache shared;
+
+    private final LinkedHashMap<Long, Entry> memory;
+    private long hits;
+    private long diskHits; // Hits whose entry was read from PlanCache/, also counted in hits
+    private long misses;
+    private long evictions;
+
+    // A stored plan, in the normalized block ids of its problem
+    private record Entry(int[] init, int[] goal, int[] plan, boolean optimal, String algorithm) {
+        int moves() {
+            return plan.length / 2;
+        }
+    }
+
+    private PlanCache(int capacity) {
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Returns the cache of the JVM, created with the capacity of the first call
+    public static synchronized PlanCache shared(int capacity) {
+        if (shared == null) {
+            shared = new PlanCache(capacity);
+        }
+        return shared;
+    }
+
+    // Returns the cache of the JVM, or null if no run has used it
+    public static synchronized PlanCache sharedIfUsed() {
+        return shared;
+    }
+
+    /**
+     * Writes the stored plan of the problem to the output file, or searches with the algorithm on a miss
+     * and stores the plan it finds.
+     *
+     * @return The number of moves of the plan, or -1 if none was found.
+     */
+    public int solve(Problem problem, String algorithm, String output, SearchOptions options) {
+        Normalized normalized = new Normalized(problem);
+        boolean optimal = Search.isOptimal(algorithm, options);
+        List<Move> plan = lookup(normalized, optimal, algorithm);
+        if (plan != null) {
+            PDDLParser.writePlan(plan, output, problem.getBlocks());
+            return plan.size();
+        }
+        int moves = Search.search(problem, algorithm, output, options);
+        if (moves >= 0) {
+            List<Move> found = moves == 0 ? List.of() : PDDLParser.readPlan(output, problem.getBlocks());
+            if (found != null) {
+                store(normalized, found, optimal, algorithm);
+            }
+        }
+        return moves;
+    }
+
+    // Describes the counters, for the summary of the run
+    public synchronized String summary() {
+        return hits + " hits (" + diskHits + " from disk), " + misses + " misses, " + evictions + " evictions";
+    }
+
+    // Returns the stored plan in the block ids of the problem, or null on a miss
+    private synchronized List<Move> lookup(Normalized problem, boolean optimal, String algorithm) {
+        List<Move> plan = find(problem, problem.key, true, algorithm);
+        if (plan == null && !optimal) {
+            plan = find(problem, problem.keyOf(algorithm), false, algorithm);
+        }
+        if (plan == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return plan;
+    }
+
+    /*
+    Returns the plan stored under the key if it is one for the problem that may answer the request: under
+    the key of the problem a shortest plan, under the key of the problem and the algorithm a plan of the
+    algorithm. Returns null otherwise, and drops the entry if its plan does not solve the problem.
+    */
+    private List<Move> find(Normalized problem, long key, boolean shared, String algorithm) {
+        Entry entry = memory.get(key);
+        boolean fromDisk = false;
+        if (entry == null) {
+            entry = readEntry(key, problem.init.length);
+            fromDisk = entry != null;
+        }
+        if (entry == null || !holds(entry, problem, shared, algorithm)) {
+            return null;
+        }
+        List<Move> plan = replay(entry.plan(), problem);
+        if (plan == null) {
+            memory.remove(key);
+            try {
+                Files.deleteIfExists(file(key));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return null;
+        }
+        if (fromDisk) {
+            memory.put(key, entry);
+            diskHits++;
+        }
+        System.out.println("Plan cache hit: " + plan.size() + " moves found by " + entry.algorithm()
+                + (fromDisk ? ", read from disk." : "."));
+        return plan;
+    }
+
+    // True when the entry is one for the problem that belongs under the shared key of the problem or the key of the algorithm
+    private static boolean holds(Entry entry, Normalized problem, boolean shared, String algorithm) {
+        return Arrays.equals(entry.init(), problem.init) && Arrays.equals(entry.goal(), problem.goal)
+                && (shared ? entry.optimal() : entry.algorithm().equals(algorithm));
+    }
+
+    // Keeps the plan unless its key already holds a plan for the problem that is at most as long
+    private synchronized void store(Normalized problem, List<Move> moves, boolean optimal, String algorithm) {
+        int[] plan = new int[2 * moves.size()];
+        for (int i = 0; i < moves.size(); i++) {
+            Move move = moves.get(i);
+            plan[2 * i] = problem.canonical[move.block()];
+            plan[2 * i + 1] = move.to() == State.TABLE ? State.TABLE : problem.canonical[move.to()];
+        }
+        if (replay(plan, problem) == null) {
+            return; // Not a plan for this problem, nothing worth keeping
+        }
+        long key = optimal ? problem.key : problem.keyOf(algorithm);
+        Entry old = memory.get(key);
+        if (old == null) {
+            old = readEntry(key, problem.init.length);
+        }
+        if (old != null && holds(old, problem, optimal, algorithm) && old.moves() <= moves.size()) {
+            return;
+        }
+        Entry entry = new Entry(problem.init, problem.goal, plan, optimal, algorithm);
+        memory.put(key, entry);
+        writeEntry(key, entry);
+    }
+
+    /*
+    Replays a stored plan on the normalized initial state and translates it to the moves of the problem.
+    Returns null unless every move takes a clear block onto the table or another clear block and the plan
+    ends in a state that satisfies every goal fact. Takes time linear in the number of blocks and moves.
+    */
+    private static List<Move> replay(int[] plan, Normalized problem) {
+        int n = problem.init.length;
+        int[] on = problem.init.clone();
+        boolean[] covered = new boolean[n];
+        for (int below : on) {
+            if (below != State.TABLE) {
+                covered[below] = true;
+            }
+        }
+        List<Move> moves = new ArrayList<>(plan.length / 2);
+        for (int i = 0; i < plan.length; i += 2) {
+            int block = plan[i];
+            int to = plan[i + 1];
+            if (block < 0 || block >= n || to < State.TABLE || to >= n || to == block || covered[block]
+                    || (to != State.TABLE && covered[to])) {
+                return null;
+            }
+            int from = on[block];
+            if (from != State.TABLE) {
+                covered[from] = false;
+            }
+            on[block] = to;
+            if (to != State.TABLE) {
+                covered[to] = true;
+            }
+            moves.add(new Move(problem.original[block], from == State.TABLE ? State.TABLE : problem.original[from],
+                    to == State.TABLE ? State.TABLE : problem.original[to]));
+        }
+        for (int block = 0; block < n; block++) {
+            if (problem.goal[block] != Goal.ANY && on[block] != problem.goal[block]) {
+                return null;
+            }
+        }
+        return moves;
+    }
+
+    private static Path file(long key) {
+        return DIRECTORY.resolve(String.format("plan-%016x.bin", key));
+    }
+
+    /*
+    Writes an entry as a magic number and version, then variable-length integers: the number of blocks,
+    the normalized initial state and goal facts and the number of moves, followed by a flag for plans of
+    an optimal algorithm, the algorithm name and the (block, destination) pairs of the plan. Block ids
+    are stored plus two, so a free block of the goal is 0, the table is 1 and a plan for up to 125 blocks
+    takes two bytes per move.
+    */
+    private static void writeEntry(long key, Entry entry) {
+        try {
+            Files.createDirectories(DIRECTORY);
+            Path temporary = Files.createTempFile(DIRECTORY, "plan", ".tmp"); // Unique, batch jobs may store the same plan at once
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                writeVarint(out, entry.init().length);
+                for (int below : entry.init()) {
+                    writeVarint(out, below + 2);
+                }
+                for (int below : entry.goal()) {
+                    writeVarint(out, below + 2);
+                }
+                writeVarint(out, entry.moves());
+                out.writeBoolean(entry.optimal());
+                out.writeUTF(entry.algorithm());
+                for (int value : entry.plan()) {
+                    writeVarint(out, value + 2);
+                }
+            }
+            PDDLParser.replaceOutputFile(temporary, file(key));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /*
+    Reads the entry stored under the key, or returns null if there is none or it is not a valid entry for
+    a problem of n blocks. The block count must be n and every move takes at least two bytes of the file,
+    so a damaged file never makes the cache allocate more than the file could hold.
+    */
+    private static Entry readEntry(long key, int n) {
+        Path file = file(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION || readVarint(in) != n) {
+                return null;
+            }
+            int[] init = new int[n];
+            int[] goal = new int[n];
+            for (int i = 0; i < n; i++) {
+                init[i] = readVarint(in) - 2;
+            }
+            for (int i = 0; i < n; i++) {
+                goal[i] = readVarint(in) - 2;
+            }
+            int moves = readVarint(in);
+            if (2L * moves > Files.size(file)) {
+                return null;
+            }
+            int[] plan = new int[2 * moves];
+            boolean optimal = in.readBoolean();
+            String algorithm = in.readUTF();
+            for (int i = 0; i < plan.length; i++) {
+                plan[i] = readVarint(in) - 2;
+            }
+            return new Entry(init, goal, plan, optimal, algorithm);
+        } catch (EOFException | StreamCorruptedException e) {
+            return null; // Truncated or damaged, treated like a missing entry
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Writes a non-negative int in 7-bit groups, lowest first, with the high bit set on all but the last
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // Reads a value written by writeVarint, rejecting one that does not fit a non-negative int
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            if (shift == 28 && (b & 0xF8) != 0) {
+                throw new StreamCorruptedException("Variable-length integer out of range");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /*
+    The initial state and goal facts of a problem with the blocks renumbered in the order of their names,
+    the mappings between both numberings and the 64-bit key of the two.
+    */
+    private static final class Normalized {
+        private final int[] canonical; // Normalized id of every block id
+        private final int[] original; // Block id of every normalized id
+        private final int[] init;
+        private final int[] goal; // What every block must sit on, Goal.ANY for a free block
+        private final long key;
+
+        Normalized(Problem problem) {
+            List<Block> blocks = problem.getBlocks();
+            int n = blocks.size();
+            Integer[] order = new Integer[n];
+            for (int id = 0; id < n; id++) {
+                order[id] = id;
+            }
+            Arrays.sort(order, Comparator.comparing(id -> blocks.get(id).name()));
+            original = new int[n];
+            canonical = new int[n];
+            for (int i = 0; i < n; i++) {
+                original[i] = order[i];
+                canonical[order[i]] = i;
+            }
+            init = normalize(problem.getInit().getState());
+            int[] facts = new int[n];
+            for (int id = 0; id < n; id++) {
+                facts[id] = problem.getGoal().below(id);
+            }
+            goal = normalize(facts);
+            long hash = n;
+            for (int below : init) {
+                hash = mix(hash, below);
+            }
+            for (int below : goal) {
+                hash = mix(hash, below);
+            }
+            key = hash;
+        }
+
+        // Returns the key of the plans of a search algorithm that does not always find a shortest plan
+        long keyOf(String algorithm) {
+            long hash = key;
+            for (int i = 0; i < algorithm.length(); i++) {
+                hash = mix(hash, algorithm.charAt(i));
+            }
+            return hash;
+        }
+
+        private int[] normalize(int[] on) {
+            int[] normalized = new int[on.length];
+            for (int id = 0; id < on.length; id++) {
+                normalized[canonical[id]] = on[id] < 0 ? on[id] : canonical[on[id]]; // State.TABLE and Goal.ANY stay
+            }
+            return normalized;
+        }
+
+        // Folds a value into the hash, with the finalizer of SplitMix64 so every bit affects the whole key
+        private static long mix(long hash, int value) {
+            long z = (hash ^ value) + 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
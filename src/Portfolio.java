@@ -0,0 +1,236 @@
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Portfolio search: races the algorithms of --portfolio on separate threads against the same problem, for example
+
+    java -jar blocks-world.jar portfolio probBLOCKS-12-0.pddl solution.txt --portfolio=best,astar,bibreadth
+
+    Every member solves its own copy of the problem under a child of the current SearchContext, writes its
+    plan to Output/<output>.<algorithm> and everything it prints to Output/<output>.<algorithm>.log. By
+    default the first plan wins. With --quality=W the portfolio waits until its shortest plan is proven to be
+    at most W times the optimal length: the proof is an admissible lower bound of the initial state, raised
+    to the exact optimum once a member that only returns shortest plans finishes. The winning plan is moved
+    to the output file and the other members are cancelled, so they stop at their next expansion.
+
+    The JVM cannot limit or even measure the live heap of a single thread, so the heap limit is enforced
+    for all members together: whenever the heap that survives a garbage collection is above 80% of the
+    maximum, the running member that has allocated the most bytes since it started is stopped, as long as
+    another member is still running. Allocation is cumulative, not live memory, but a breadth-first member
+    that fills the heap also allocates the most, so it is stopped before it can starve the others into an
+    OutOfMemoryError.
+*/
+public class Portfolio {
+    private static final double MEMORY_LIMIT = 0.8; // Share of the maximum heap the live data of all members may use
+
+    private final Problem problem;
+    private final String output;
+    private final SearchOptions options;
+    private final SearchOptions memberOptions; // The portfolio looks up and stores its plan in the cache once, not every member
+    private final List<Member> members = new ArrayList<>();
+    private final LinkedBlockingQueue<Member> finished = new LinkedBlockingQueue<>();
+    private long collections; // Garbage collections seen by the last memory check
+
+    public Portfolio(Problem problem, String output, SearchOptions options) {
+        this.problem = problem;
+        this.output = output;
+        this.options = options;
+        this.memberOptions = options.withoutCache();
+    }
+
+    /**
+     * Runs the members until one of them wins, then stops the others.
+     *
+     * @return The number of moves of the winning plan, or -1 if no member found a plan.
+     */
+    public int run() {
+        boolean installed = ThreadLog.install();
+        SearchContext context = SearchContext.current();
+        int lowerBound = problem.lowerBound(problem.getInit());
+        if (options.isPatternDatabase()) {
+            lowerBound = Math.max(lowerBound, problem.Heuristic(problem.getInit()));
+        }
+        for (String algorithm : options.getPortfolio()) {
+            Member member = new Member(algorithm, context.child());
+            members.add(member);
+            member.thread.start();
+        }
+        collections = collections();
+
+        Member best = null;
+        try {
+            for (int done = 0; done < members.size(); ) {
+                Member member = finished.poll(10, TimeUnit.MILLISECONDS);
+                if (member == null) {
+                    enforceHeapLimit();
+                    continue;
+                }
+                done++;
+                if (member.moves < 0) {
+                    continue;
+                }
+                if (best == null || member.moves < best.moves) {
+                    best = member;
+                }
+                if (Search.isOptimal(member.algorithm, options)) {
+                    lowerBound = member.moves; // Shortest plans only: no plan can be shorter
+                }
+                if (options.getQuality() == 0 || best.moves <= options.getQuality() * lowerBound) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Member member : members) {
+                member.context.cancel();
+            }
+            joinAll();
+            if (installed) {
+                ThreadLog.uninstall();
+            }
+        }
+
+        for (Member member : members) {
+            System.out.printf("Portfolio member %-10s %-20s %s%n", member.algorithm, member.status,
+                    member.moves < 0 ? "" : member.moves + " moves" + (member == best ? " (winner)" : ""));
+        }
+        for (Member member : members) {
+            Path plan = Paths.get("Output", member.output);
+            if (member == best) {
+                PDDLParser.replaceOutputFile(plan, Paths.get("Output", output));
+            } else {
+                try {
+                    Files.deleteIfExists(plan);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        if (best == null) {
+            context.check(); // A portfolio without a plan that ran out of time is reported as a timeout
+            System.out.println("No path found!");
+            return -1;
+        }
+        System.out.println("Portfolio needs " + best.moves + " moves (" + best.algorithm + ", lower bound " + lowerBound + ").");
+        return best.moves;
+    }
+
+    /*
+    Stops the running member that allocated the most so far once the live heap is over the limit. The heap is only
+    measured just after a collection, when it is close to the live data, and only while no stopped member is
+    still unwinding, so the memory of a member that was just stopped is not counted against the next one.
+    */
+    private void enforceHeapLimit() {
+        long now = collections();
+        if (now == collections) {
+            return;
+        }
+        collections = now;
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        if (used < MEMORY_LIMIT * runtime.maxMemory()) {
+            return;
+        }
+        Member heaviest = null;
+        int running = 0;
+        for (Member member : members) {
+            if (member.stopped && member.thread.isAlive()) {
+                return;
+            }
+            if (!member.thread.isAlive() || member.stopped) continue;
+            running++;
+            if (heaviest == null || member.allocated() > heaviest.allocated()) {
+                heaviest = member;
+            }
+        }
+        if (running > 1) {
+            heaviest.stopped = true;
+            heaviest.context.cancel();
+            System.out.printf("Portfolio stopped %s: %.1f MB of %.1f MB heap live after a collection.%n",
+                    heaviest.algorithm, used / 1e6, runtime.maxMemory() / 1e6);
+        }
+    }
+
+    private void joinAll() {
+        for (Member member : members) {
+            try {
+                member.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Total number of garbage collections so far
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    // One algorithm of the portfolio, running on a thread of its own
+    private final class Member implements Runnable {
+        private final String algorithm;
+        private final SearchContext context;
+        private final String output;
+        private final Thread thread;
+        private volatile String status = "running";
+        private volatile int moves = -1;
+        private volatile boolean stopped; // Cancelled by the memory check
+
+        Member(String algorithm, SearchContext context) {
+            this.algorithm = algorithm;
+            this.context = context;
+            this.output = Portfolio.this.output + "." + algorithm;
+            this.thread = new Thread(this, "portfolio-" + algorithm);
+            thread.setDaemon(true); // The SIGAlarm of a single run still ends the JVM
+        }
+
+        @Override
+        public void run() {
+            context.bind();
+            try (PrintStream log = new PrintStream(new FileOutputStream(Paths.get("Output", output + ".log").toFile()), true)) {
+                ThreadLog.bind(log);
+                try {
+                    moves = Search.SelectSearch(problem.copy(), algorithm, output, memberOptions);
+                    status = moves >= 0 ? "solved" : "no plan";
+                } catch (SearchCancelledException e) {
+                    status = stopped ? "stopped for memory" : e.getMessage().equals("cancelled") ? "cancelled" : "timeout";
+                } catch (OutOfMemoryError e) {
+                    status = "out of memory";
+                } catch (RuntimeException e) {
+                    status = "error";
+                    e.printStackTrace(log);
+                }
+                log.println("Status: " + status);
+            } catch (FileNotFoundException e) {
+                status = "error";
+            } finally {
+                finished.add(this);
+            }
+        }
+
+        // Bytes the member thread allocated since it started, including garbage, or its expanded nodes where
+        // the JVM does not count allocations
+        long allocated() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean counting && counting.isThreadAllocatedMemoryEnabled()) {
+                long bytes = counting.getThreadAllocatedBytes(thread.threadId());
+                if (bytes >= 0) {
+                    return bytes;
+                }
+            }
+            return context.expanded();
+        }
+    }
+}
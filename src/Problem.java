@@ -2,21 +2,65 @@ import java.util.*;
 
 public class Problem {
     private final State s1;
-    private final State s2;
+    private final State s2; // A state that reaches the goal, the only one when the goal is complete
+    private final Goal goal;
+    private final List<Block> blocks; // Block names, indexed by the interned block id
+    private final int[] goalPositions; // Index of every block in its goal tower, counted from the table, -1 if the goal does not fix it
+    private PatternDatabase patternDatabase; // Replaces the default heuristic when set
+    private SearchStats stats = SearchStats.DISABLED; // Receives the time spent in the heuristic
 
-    public Problem(State s1, State s2) {
+    public Problem(State s1, Goal goal, List<Block> blocks) {
         this.s1 = s1;
-        this.s2 = s2;
+        this.s2 = new State(goal.completion());
+        this.goal = goal;
+        this.blocks = blocks;
+        this.goalPositions = new int[s1.size()]; // Computed once per problem instead of once per heuristic call
+        for (int block = 0; block < goalPositions.length; block++) {
+            goalPositions[block] = goal.position(block);
+        }
+        s1.useGoal(goal);
+    }
+
+    // Returns a problem with a copy of the initial state, for searches that run alongside each other (the goal is read-only)
+    public Problem copy() {
+        Problem copy = new Problem(new State(s1.getState().clone()), goal, blocks);
+        copy.patternDatabase = patternDatabase; // Read-only once built, so the copies share it (the stats are per run)
+        return copy;
     }
 
     public State getInit() {
         return s1;
     }
 
+    // Returns a state that reaches the goal, with the free blocks of a partial goal on the table
     public State getFinal() {
         return s2;
     }
 
+    public Goal getGoal() {
+        return goal;
+    }
+
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+
+    // Makes both Heuristic methods look up the pattern database instead of computing the default heuristic
+    public void usePatternDatabase(PatternDatabase patternDatabase) {
+        this.patternDatabase = patternDatabase;
+    }
+
+    // Makes the heuristic report its time to the stats of the run
+    public void useStats(SearchStats stats) {
+        this.stats = stats;
+    }
+
+    // Turns the pruning of successor generation on or off for the searches from the initial and the goal state
+    public void usePruning(boolean pruning) {
+        s1.usePruning(pruning);
+        s2.usePruning(pruning);
+    }
+
     /**
      * Heuristic function to estimate the cost of reaching the goal state from the current state.
      *
@@ -27,71 +71,172 @@ public class Problem {
      *    should not appear below it in the goal stack.
      *
      * Steps:
-     * - Map the positions of blocks in the goal stack for quick lookup.
-     * - Compute the heights of blocks in the current state for penalty calculation.
-     * - Iterate through each stack in the current state and compare the positions of blocks with their goal positions.
+     * - Look up the positions of blocks in the goal towers, precomputed when the problem is created.
+     * - Rebuild the towers of the current state from its on[] array.
+     * - Iterate through each tower in the current state and compare the positions of blocks with their goal positions.
      * - Accumulate penalties for misplaced blocks and out-of-order dependencies.
      *
      * The heuristic returns the sum of misplaced blocks and the penalty score.
      * This approach provides an admissible and consistent heuristic for solving the block-stacking problem.
+     * Goals with several towers work the same way. When the goal leaves some blocks free, the blocks whose goal
+     * tower does not reach the table have no goal index: they count as misplaced when their own goal fact does
+     * not hold, and cause no dependency penalties. A free block is never misplaced.
+     * When a pattern database is set, its admissible sum of pattern distances is returned instead.
      *
      * @param currentState The current state of the blocks.
-     * @param goalState The desired goal state of the blocks.
      * @return The heuristic cost as an integer.
      */
-    public static int Heuristic(State currentState, State goalState) {
+    public int Heuristic(State currentState) {
+        long since = stats.clock();
+        int h = heuristic(currentState);
+        stats.heuristicTime(since);
+        return h;
+    }
+
+    private int heuristic(State currentState) {
+        if (patternDatabase != null) {
+            return patternDatabase.heuristic(currentState);
+        }
         int misplacedBlocks = 0;
         int penalty = 0;
 
-        List<Substack> currentStacks = currentState.getState();
-        Substack goalStack = goalState.getState().getFirst(); // Assuming a single goal stack
+        // Iterate over all towers in the current state
+        for (int[] currentStack : currentState.getTowers()) {
+            for (int j = 0; j < currentStack.length; j++) {
+                int currentBlock = currentStack[j];
+                int goalIndex = goalPositions[currentBlock];
 
-        // Create a map for quick lookup of goal positions and block heights in the goal stack
-        Map<Block, Integer> goalPositions = new HashMap<>();
-        for (int i = 0; i < goalStack.size(); i++) {
-            goalPositions.put(goalStack.getBlockAtIndex(i), i);
-        }
+                if (misplaced(currentBlock, j, j == 0 ? State.TABLE : currentStack[j - 1])) {
+                    // Misplaced block
+                    misplacedBlocks++;
 
-        // Precompute heights of blocks in the current state
-        Map<Block, Integer> currentHeights = new HashMap<>();
-        for (Substack stack : currentStacks) {
-            for (int j = 0; j < stack.size(); j++) {
-                currentHeights.put(stack.getBlockAtIndex(j), stack.size() - j - 1); // Height from top
-            }
-        }
-        // Iterate over all stacks in the current state
-        for (Substack currentStack : currentStacks) {
-            for (int j = 0; j < currentStack.size(); j++) {
-                Block currentBlock = currentStack.getBlockAtIndex(j);
-
-                // Check if the block exists in the goal stack
-                Integer goalIndex = goalPositions.get(currentBlock);
-
-                if (goalIndex != null) {
-                    // Block exists in the goal stack
-                    if (!goalIndex.equals(j)) {
-                        // Misplaced block
-                        misplacedBlocks++;
-
-                        // Penalize blocks above the current block
-                        penalty += currentHeights.get(currentBlock);
-
-                        // Penalize out-of-order dependencies
-                        for (int k = j + 1; k < currentStack.size(); k++) {
-                            Block aboveBlock = currentStack.getBlockAtIndex(k);
-                            Integer aboveGoalIndex = goalPositions.get(aboveBlock);
-                            if (aboveGoalIndex != null && aboveGoalIndex < goalIndex) {
-                                penalty++; // Misplaced dependency penalty
-                            }
+                    // Penalize blocks above the current block
+                    penalty += currentStack.length - j - 1;
+
+                    // Penalize out-of-order dependencies
+                    for (int k = j + 1; goalIndex >= 0 && k < currentStack.length; k++) {
+                        if (goalPositions[currentStack[k]] >= 0 && goalPositions[currentStack[k]] < goalIndex) {
+                            penalty++; // Misplaced dependency penalty
                         }
                     }
-                } else {
-                    // Block is irrelevant or misplaced (not in the goal stack)
-                    misplacedBlocks++;
                 }
             }
         }
         return misplacedBlocks + penalty;
     }
 
-}
\ No newline at end of file
+    // True when the block at the index of its tower, sitting on below, is not where the goal wants it
+    private boolean misplaced(int block, int index, int below) {
+        int goalIndex = goalPositions[block];
+        if (goalIndex >= 0) {
+            return goalIndex != index;
+        }
+        int target = goal.below(block);
+        return target != Goal.ANY && target != below;
+    }
+
+    /**
+     * Counts the goal facts the state does not satisfy, the blocks that do not sit on what they sit on in the goal.
+     * Each of them has to be moved at least once, so unlike the heuristic this never overestimates the number of
+     * moves left, and searches that must keep plans shortest can use it for pruning. A move changes the count by
+     * at most one, see lowerBoundChange.
+     *
+     * @param state The current state of the blocks.
+     * @return A lower bound on the number of moves to the goal.
+     */
+    public int lowerBound(State state) {
+        return goal.unsatisfied(state.getState());
+    }
+
+    // Returns how much the move changes lowerBound: -1, 0 or +1
+    public int lowerBoundChange(Move move) {
+        return goal.change(move);
+    }
+
+    /**
+     * Computes the heuristic of the child reached by a move from the heuristic of its parent.
+     *
+     * Every term of the heuristic only depends on the tower a block is in, so a move can only change the
+     * terms of the tower it leaves and the tower it lands on. Taking the block off the top of a tower:
+     * - removes its own misplaced count (it has nothing above it, so no other penalty),
+     * - lowers the height penalty of every misplaced block below it by one,
+     * - removes one dependency penalty for every misplaced block below it whose goal index is above the moved block's.
+     * Putting it on top of a tower adds the same terms back at its new index. Only the two towers are walked and
+     * nothing is allocated, instead of rebuilding all towers and rescanning every block.
+     *
+     * @param parent The state the move is made from, with its heuristic already set.
+     * @param move The move that produces the child.
+     * @return The heuristic cost of the child as an integer.
+     */
+    public int Heuristic(State parent, Move move) {
+        long since = stats.clock();
+        int h = childHeuristic(parent, move);
+        stats.heuristicTime(since);
+        return h;
+    }
+
+    private int childHeuristic(State parent, Move move) {
+        if (patternDatabase != null) {
+            return parent.getH() + patternDatabase.change(parent, move);
+        }
+        int block = move.block();
+        return parent.getH() - towerTerms(parent, move.from(), block) + towerTerms(parent, move.to(), block);
+    }
+
+    /*
+    Returns the heuristic terms that depend on block sitting on top of the tower whose top is below
+    (State.TABLE for an empty spot on the table): the block's own misplaced count plus the penalties
+    it causes for the misplaced blocks underneath it.
+    */
+    private int towerTerms(State s, int below, int block) {
+        int height = 0;
+        for (int b = below; b != State.TABLE; b = s.below(b)) {
+            height++;
+        }
+        int terms = misplaced(block, height, below) ? 1 : 0;
+        int j = height - 1;
+        for (int b = below; b != State.TABLE; b = s.below(b), j--) {
+            if (misplaced(b, j, s.below(b))) {
+                terms++; // Height penalty
+                if (goalPositions[block] >= 0 && goalPositions[b] >= 0 && goalPositions[block] < goalPositions[b]) {
+                    terms++; // Dependency penalty
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Replays a plan on the initial state, independently of the search that found it.
+     *
+     * @param plan The moves of the plan, as read back from its output file.
+     * @return Null if every move takes a clear block from where it sits onto the table or onto another clear
+     * block and the plan ends in a state that satisfies the goal, otherwise what is wrong with the plan.
+     */
+    public String checkPlan(List<Move> plan) {
+        int[] on = s1.getState().clone();
+        boolean[] covered = new boolean[on.length];
+        for (int below : on) {
+            if (below != State.TABLE) {
+                covered[below] = true;
+            }
+        }
+        for (int i = 0; i < plan.size(); i++) {
+            Move move = plan.get(i);
+            int block = move.block();
+            int to = move.to();
+            if (on[block] != move.from() || covered[block] || to == block || (to != State.TABLE && covered[to])) {
+                return "move " + (i + 1) + " cannot move " + blocks.get(block) + " from where it is to where it goes";
+            }
+            if (move.from() != State.TABLE) {
+                covered[move.from()] = false;
+            }
+            on[block] = to;
+            if (to != State.TABLE) {
+                covered[to] = true;
+            }
+        }
+        int unsatisfied = goal.unsatisfied(on);
+        return unsatisfied == 0 ? null : "the plan ends with " + unsatisfied + " goal facts unsatisfied";
+    }
+}
@@ -1,35 +1,100 @@
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 public class Search {
+    // Every algorithm SelectSearch accepts
+    public static final List<String> ALGORITHMS = List.of(
+            "depth", "iddfs", "breadth", "bibreadth", "astar", "hdastar", "anytime", "best", "idastar", "domain", "portfolio");
 
     /**
      * Selects and executes a search algorithm to solve the given problem.
-     * Supported algorithms: Depth-First Search (DFS), Breadth-First Search (BFS), A* Search, and Best-First Search.
+     * Supported algorithms: Depth-First Search (DFS), Breadth-First Search (BFS), A* Search, Best-First Search, IDA* Search, Iterative-Deepening DFS,
+     * Bidirectional BFS, Hash-Distributed A*, Anytime Weighted A*, the domain-specific planner and a portfolio racing several of them.
      * After finding a solution, the method prints the solution path and writes it to the output file.
      *
      * @param problem  The problem to be solved, defined by its initial and goal states.
-     * @param algorithm The name of the search algorithm to use ("depth", "breadth", "astar", or "best").
+     * @param algorithm The name of the search algorithm to use ("depth", "iddfs", "breadth", "bibreadth", "astar", "hdastar", "anytime", "best", "idastar", "domain" or "portfolio").
      * @param output   The name of the output file to write the solution path.
+     * @param options  Optional settings given after the required command-line arguments.
+     * @return The number of moves of the plan, or -1 if none was found.
      */
-    public static void SelectSearch(Problem problem, String algorithm, String output) {
+    public static int SelectSearch(Problem problem, String algorithm, String output, SearchOptions options) {
+        if (options.isCache()) {
+            return PlanCache.shared(options.getCacheSize()).solve(problem, algorithm, output, options);
+        }
+        return search(problem, algorithm, output, options);
+    }
+
+    // Runs the search, with the telemetry of --stats; the plan cache calls this on a miss
+    static int search(Problem problem, String algorithm, String output, SearchOptions options) {
+        if (!options.isStats()) {
+            return select(problem, algorithm, output, options);
+        }
+        // Run the search in a child context whose stats the search loops and the heuristic report to
+        SearchContext parent = SearchContext.current();
+        SearchStats stats = new SearchStats(algorithm, output, options.getProgress());
+        SearchContext context = parent.child(stats);
+        context.bind();
+        problem.useStats(stats);
+        stats.start(context);
+        String status = "error";
+        int moves = -1;
+        try {
+            moves = select(problem, algorithm, output, options);
+            status = moves >= 0 ? "solved" : "no plan";
+            return moves;
+        } catch (SearchCancelledException e) {
+            status = e.getMessage();
+            throw e;
+        } catch (OutOfMemoryError e) {
+            status = "out of memory";
+            throw e;
+        } finally {
+            stats.finish(status, moves);
+            problem.useStats(SearchStats.DISABLED);
+            parent.bind();
+        }
+    }
+
+    // True for the algorithms whose plans are always shortest ones, for the heuristic in use
+    static boolean isOptimal(String algorithm, SearchOptions options) {
+        return switch (algorithm) {
+            case "breadth", "bibreadth", "iddfs" -> true;
+            case "astar", "hdastar", "idastar", "anytime" -> options.isPatternDatabase();
+            default -> false;
+        };
+    }
+
+    private static int select(Problem problem, String algorithm, String output, SearchOptions options) {
         State init = problem.getInit();
         State end = problem.getFinal();
+        ClosedSet visited = options.newClosedSet();
+        problem.usePruning(options.isPruning());
+        if (options.isPatternDatabase()) {
+            long time = System.currentTimeMillis();
+            PatternDatabase patternDatabase = PatternDatabase.forProblem(problem, options.getPatternSize());
+            problem.usePatternDatabase(patternDatabase);
+            System.out.println("Pattern database ready in " + (System.currentTimeMillis() - time) / 1000.0
+                    + " seconds (" + patternDatabase.summary() + ").");
+        }
+        int upperBound = options.isDomainBound() ? domainBound(problem, output) : Integer.MAX_VALUE;
+        int moves = -1;
         switch (algorithm) {
             case "depth" -> {
                 ArrayList<State> path = new ArrayList<>();
-                Set<State> visited = new HashSet<>();
 
                 // Perform DFS to find the path
-                if (dfs(init, end, path, visited)) {
-                    Collections.reverse(path);
+                if (dfs(init, path, visited)) {
                     System.out.println("Path found:");
                     ArrayList<State> deepCopiedPath = new ArrayList<>(path);
                     // Print only the moves from the solution path
                     for (State state : deepCopiedPath) {
-                        state.filterState().printState();  // Print the state
+                        state.printState(problem.getBlocks());  // Print the state
                     }
-                    PDDLParser.parseOutputFile(path, output);
+                    PDDLParser.parseOutputFile(path, output, problem.getBlocks());
                     System.out.println("Depth First Search needs " + deepCopiedPath.size() + " moves.");
+                    moves = path.size() - 1;
                 } else {
                     System.out.println("No path found!");
                 }
@@ -37,107 +102,383 @@ public class Search {
             case "breadth" -> {
                 ArrayList<State> path = new ArrayList<>();
 
-                // Perform BFS to find the path
-                if (bfs(init, end, path)) {
+                // Perform BFS to find the path, expanding each layer in parallel when more than one thread is set
+                boolean found = options.getThreads() > 1
+                        ? parallelBfs(init, path, options.getThreads(), options.isExactClosedSet())
+                        : bfs(init, path, visited);
+                if (found) {
                     System.out.println("Path found:");
                     ArrayList<State> deepCopiedPath = new ArrayList<>(path);
                     // Print the states in the solution path
                     for (State state : deepCopiedPath) {
-                        state.filterState().printState();  // Print the state
+                        state.printState(problem.getBlocks());  // Print the state
                     }
-                    PDDLParser.parseOutputFile(path, output);
+                    PDDLParser.parseOutputFile(path, output, problem.getBlocks());
                     System.out.println("Breadth First Search needs " + path.size() + " moves.");
+                    moves = path.size() - 1;
                 } else {
                     System.out.println("No path found!");
                 }
             }
+            case "bibreadth" -> {
+                ArrayList<State> path = new ArrayList<>();
+
+                // Perform Bidirectional BFS, which keeps its own index for each direction. The backward half needs the
+                // single goal state of a complete goal; a partial goal is reached by many states, so it searches forward only.
+                boolean complete = problem.getGoal().isComplete();
+                if (!complete) {
+                    System.out.println("The goal leaves blocks free, searching forward only.");
+                }
+                if (complete ? biBfs(init, end, path) : bfs(init, path, visited)) {
+                    System.out.println("Path found:");
+                    for (State state : path) {
+                        state.printState(problem.getBlocks());  // Print the state
+                    }
+                    PDDLParser.parseOutputFile(path, output, problem.getBlocks());
+                    moves = path.size() - 1;
+                    System.out.println("Bidirectional Breadth First Search needs " + moves + " moves.");
+                } else {
+                    System.out.println("No path found!");
+                }
+                return moves;
+            }
             case "astar" -> {
                 // Perform A* Search
                 ArrayList<State> path = new ArrayList<>();
-                if (aStar(init, end, path)) {
+                if (aStar(problem, path, visited, upperBound)) {
                     System.out.println("Path found:");
                     ArrayList<State> deepCopiedPath = new ArrayList<>(path);
                     for (State state : deepCopiedPath) {
-                        state.filterState().printState(end, algorithm);
+                        state.printState(problem, algorithm);
                     }
-                    PDDLParser.parseOutputFile(path, output);
+                    PDDLParser.parseOutputFile(path, output, problem.getBlocks());
                     System.out.println("A* needs " + path.size() + " moves.");
+                    moves = path.size() - 1;
 
                 } else {
                     System.out.println("No path found!");
                 }
             }
+            case "hdastar" -> {
+                // Perform Hash-Distributed A* on --threads workers, each with its own open and closed list
+                ArrayList<State> path = new ArrayList<>();
+                if (new HDAStar(problem, options.getThreads()).search(path)) {
+                    System.out.println("Path found:");
+                    for (State state : path) {
+                        state.printState(problem, algorithm);
+                    }
+                    PDDLParser.parseOutputFile(path, output, problem.getBlocks());
+                    moves = path.size() - 1;
+                    System.out.println("HDA* needs " + moves + " moves.");
+                } else {
+                    System.out.println("No path found!");
+                }
+                return moves;
+            }
+            case "anytime" -> {
+                // Perform Anytime Weighted A*, which writes every better plan to the output file as it is found
+                ArrayList<State> path = new ArrayList<>();
+                if (new AnytimeAStar(problem, output, options.getWeight(), 0.5, upperBound).search(path)) {
+                    System.out.println("Path found:");
+                    for (State state : path) {
+                        state.printState(problem, "astar");
+                    }
+                    moves = path.size() - 1;
+                    System.out.println("Anytime A* needs " + moves + " moves.");
+                } else {
+                    System.out.println("No path found!");
+                }
+                return moves;
+            }
+            case "domain" -> {
+                // Build the plan with the domain-specific planner, without searching. The plan can be thousands of
+                // moves long on large problems, so only its length is printed and the states are never built.
+                List<Move> plan = new DomainPlanner(problem).plan();
+                PDDLParser.writePlan(plan, output, problem.getBlocks());
+                System.out.println("Domain planner needs " + plan.size() + " moves.");
+                return plan.size();
+            }
             case "best" -> {
                 // Perform Best-First Search
                 ArrayList<State> path = new ArrayList<>();
-                if (bestFirst(init,end,path)) {
+                if (bestFirst(problem, path, visited, upperBound)) {
                     System.out.println("Path found:");
                     ArrayList<State> deepCopiedPath = new ArrayList<>(path);
                     for (State state : deepCopiedPath) {
-                        state.filterState().printState(end, algorithm);
+                        state.printState(problem, algorithm);
                     }
-                    PDDLParser.parseOutputFile(path, output);
+                    PDDLParser.parseOutputFile(path, output, problem.getBlocks());
                     System.out.println("Best first needs " + path.size() + " moves.");
+                    moves = path.size() - 1;
+                } else {
+                    System.out.println("No path found!");
+                }
+            }
+            case "iddfs" -> {
+                // Perform Iterative-Deepening DFS, bounded by --depth-bound or by two moves per block
+                ArrayList<State> path = new ArrayList<>();
+                int bound = Math.min(upperBound, options.getDepthBound() > 0 ? options.getDepthBound() : 2 * init.size());
+                if (iddfs(problem, path, bound)) {
+                    System.out.println("Path found:");
+                    for (State state : path) {
+                        state.printState(problem.getBlocks());
+                    }
+                    PDDLParser.parseOutputFile(path, output, problem.getBlocks());
+                    moves = path.size() - 1;
+                    System.out.println("Iterative Deepening DFS needs " + moves + " moves.");
+                } else {
+                    System.out.println("No path found within " + bound + " moves!");
+                }
+                return moves;
+            }
+            case "idastar" -> {
+                // Perform IDA* Search, which keeps no closed list
+                ArrayList<State> path = new ArrayList<>();
+                if (new IDAStar(problem).search(path)) {
+                    System.out.println("Path found:");
+                    for (State state : path) {
+                        state.printState(problem, algorithm);
+                    }
+                    PDDLParser.parseOutputFile(path, output, problem.getBlocks());
+                    moves = path.size() - 1;
+                    System.out.println("IDA* needs " + moves + " moves.");
                 } else {
                     System.out.println("No path found!");
                 }
+                return moves;
             }
-            default -> System.out.println("Unknown algorithm: " + algorithm);
+            case "portfolio" -> {
+                // Race the --portfolio algorithms on their own threads and keep the plan of the winner
+                return new Portfolio(problem, output, options).run();
+            }
+            default -> {
+                System.out.println("Unknown algorithm: " + algorithm);
+                return -1;
+            }
+        }
+        if (visited.size() > 0) {
+            System.out.printf("Closed set: %d states, %.1f bytes per state.%n", visited.size(), visited.bytesPerEntry());
         }
+        return moves;
+    }
+
+    /*
+    Runs the domain-specific planner and returns its plan length, which no search has to exceed.
+    Its plan is written to the output file right away, so a search that is stopped by the alarm
+    before it finds a plan within the bound still leaves a valid plan behind.
+    */
+    private static int domainBound(Problem problem, String output) {
+        List<Move> plan = new DomainPlanner(problem).plan();
+        PDDLParser.writePlan(plan, output, problem.getBlocks());
+        System.out.println("Domain planner bound: " + plan.size() + " moves.");
+        return plan.size();
     }
 
     /**
      * Performs Depth-First Search (DFS) to find a solution path.
+     * The search keeps its own stack of frames instead of recursing, so its depth is not limited by the thread
+     * stack size. It makes and unmakes moves on a single mutable copy of the start state; a frame only holds the
+     * move that led to it and the index of the next move to try, and full states are built for the solution path alone.
      *
-     * @param current The current state being explored.
-     * @param goal The goal state to reach.
+     * @param start The initial state, which counts the unsatisfied facts of the goal to reach.
      * @param path The solution path if found.
      * @param visited The set of visited states to avoid loops.
      * @return True if a path is found, otherwise false.
      */
-    public static boolean dfs(State current, State goal, ArrayList<State> path, Set<State> visited) {
+    public static boolean dfs(State start, ArrayList<State> path, ClosedSet visited) {
+        SearchContext context = SearchContext.current();
+        SearchStats stats = context.stats();
+        State current = start.copy(); // Mutable working copy of the start state
+        ArrayDeque<Frame> stack = new ArrayDeque<>();
+        visited.add(current);
+        if (current.isGoal()) {
+            path.add(start);
+            return true;
+        }
+        stack.push(new Frame(null, null, 0));
 
-        if (visited.contains(current)) {
-            return false; // Skip if already visited
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            long since = stats.clock();
+            int index = current.nextMoveIndex(frame.next, frame.move == null ? -1 : frame.move.block());
+            stats.successorTime(since);
+            if (index == -1) {
+                // Every move of this state was tried, backtrack to its parent
+                stack.pop();
+                if (frame.move != null) {
+                    current.unmakeMove(frame.move);
+                }
+                continue;
+            }
+            frame.next = index + 1;
+            Move move = current.moveAt(index);
+            stats.generated(1);
+            if (visited.contains(current, move)) {
+                stats.duplicate();
+                continue; // Skip if already visited
+            }
+            current.makeMove(move);
+            visited.add(current); // Mark the child as visited
+            context.expand();
+            stack.push(new Frame(move, null, 0));
+            stats.open(stack.size());
+            stats.closed(visited.size());
+            if (current.isGoal()) {
+                buildPath(start, stack, path);
+                return true;
+            }
         }
-        visited.add(current); // Mark current as visited
-        if (current.equals(goal)) {
-            path.add(current);
+        return false;
+    }
+
+    /**
+     * Performs Iterative-Deepening Depth-First Search (IDDFS) to find a solution path.
+     * Depth-limited searches are run with increasing limits up to maxDepth, so the first plan found is also the
+     * shortest one. The limits start at Problem.lowerBound of the initial state, and a branch is cut as soon as its
+     * depth plus the lower bound of its state exceeds the limit; the bound never overestimates, so no shorter plan
+     * can be cut off. Like dfs it uses an explicit stack and a single mutable state, and it only checks for cycles
+     * along the current path, so memory stays proportional to the depth limit. The moves of every state are
+     * tried in the order of the heuristic of the state they lead to.
+     *
+     * @param problem The problem to solve, providing the initial state, the goal state and the heuristic.
+     * @param path The solution path if found.
+     * @param maxDepth The largest depth limit to try.
+     * @return True if a path is found, otherwise false.
+     */
+    public static boolean iddfs(Problem problem, ArrayList<State> path, int maxDepth) {
+        SearchContext context = SearchContext.current();
+        SearchStats stats = context.stats();
+        State start = problem.getInit();
+        State current = start.copy(); // Mutable working copy of the start state
+        current.setH(problem.Heuristic(current));
+        if (current.isGoal()) {
+            path.add(start);
             return true;
         }
-        for (State child : current.generateChildrenUninformed(visited)) {
-            if (!visited.contains(child)) {
-                if (dfs(child, goal, path, visited)) {
-                    path.add(current);
+        long[] pathHashes = new long[maxDepth + 1]; // Fingerprints of the states on the current path
+        pathHashes[0] = current.fingerprint();
+        int lowerBound = problem.lowerBound(current); // Kept up to date with the moves on the current path
+
+        for (int limit = Math.max(1, lowerBound); limit <= maxDepth; limit++) {
+            long nodes = 0;
+            stats.layer(limit);
+            ArrayDeque<Frame> stack = new ArrayDeque<>();
+            stack.push(new Frame(null, orderedMoves(current, -1, problem, stats), current.getH()));
+
+            while (!stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (frame.next == frame.moves.size()) {
+                    stack.pop();
+                    if (frame.move != null) {
+                        current.unmakeMove(frame.move);
+                        current.setH(stack.peek().h);
+                        lowerBound -= problem.lowerBoundChange(frame.move);
+                    }
+                    continue;
+                }
+                Move move = frame.moves.get(frame.next++);
+                int depth = stack.size(); // Depth of the child
+                if (depth + lowerBound + problem.lowerBoundChange(move) > limit) {
+                    continue; // The goal cannot be reached from the child within the limit
+                }
+                long hash = current.fingerprintAfter(move);
+                if (onPath(pathHashes, depth, hash)) {
+                    stats.duplicate();
+                    continue; // The child is already on the current path
+                }
+                int childH = problem.Heuristic(current, move); // Needs the state before the move is made
+                current.makeMove(move);
+                current.setH(childH);
+                if (current.isGoal()) {
+                    stack.push(new Frame(move, List.of(), childH));
+                    System.out.println("Depth limit " + limit + ": goal found after " + nodes + " nodes expanded.");
+                    buildPath(start, stack, path);
                     return true;
                 }
+                if (depth < limit) {
+                    nodes++;
+                    context.expand();
+                    pathHashes[depth] = hash;
+                    lowerBound += problem.lowerBoundChange(move);
+                    stack.push(new Frame(move, orderedMoves(current, move.block(), problem, stats), childH));
+                    stats.open(stack.size());
+                } else {
+                    current.unmakeMove(move); // The depth limit is reached, do not expand the child
+                    current.setH(frame.h);
+                }
             }
+            System.out.println("Depth limit " + limit + ": " + nodes + " nodes expanded.");
         }
         return false;
     }
 
+    // Returns the moves of the state, reached by moving lastBlock, sorted by the heuristic of the state each of them leads to
+    private static List<Move> orderedMoves(State state, int lastBlock, Problem problem, SearchStats stats) {
+        long since = stats.clock();
+        List<Move> moves = state.generateMoves(lastBlock);
+        stats.generated(moves.size());
+        long[] keyed = new long[moves.size()];
+        for (int i = 0; i < keyed.length; i++) {
+            keyed[i] = (long) problem.Heuristic(state, moves.get(i)) << 32 | i; // Sort by heuristic, then by index
+        }
+        Arrays.sort(keyed);
+        List<Move> ordered = new ArrayList<>(keyed.length);
+        for (long key : keyed) {
+            ordered.add(moves.get((int) key));
+        }
+        stats.successorTime(since);
+        return ordered;
+    }
+
+    // Checks whether a fingerprint belongs to one of the first depth states of the current path
+    private static boolean onPath(long[] pathHashes, int depth, long hash) {
+        for (int i = 0; i < depth; i++) {
+            if (pathHashes[i] == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Replays the moves on the stack, from the bottom frame up, to build the full states of the solution path
+    private static void buildPath(State start, ArrayDeque<Frame> stack, ArrayList<State> path) {
+        State state = start;
+        path.add(state);
+        Iterator<Frame> it = stack.descendingIterator();
+        while (it.hasNext()) {
+            Move move = it.next().move;
+            if (move != null) {
+                state = state.applyMove(move);
+                path.add(state);
+            }
+        }
+    }
+
     /**
      * Performs Breadth-First Search (BFS) to find a solution path.
      *
-     * @param start The initial state.
-     * @param goal The goal state to reach.
+     * @param start The initial state, which counts the unsatisfied facts of the goal to reach.
      * @param path The solution path if found.
+     * @param visited The closed list of the search.
      * @return True if a path is found, otherwise false.
      */
-    public static boolean bfs(State start, State goal, ArrayList<State> path) {
+    public static boolean bfs(State start, ArrayList<State> path, ClosedSet visited) {
+        SearchContext context = SearchContext.current();
+        SearchStats stats = context.stats();
         Queue<State> queue = new ArrayDeque<>(); // More efficient than LinkedList
-        Set<State> visited = new HashSet<>();
         queue.add(start);
 
         while (!queue.isEmpty()) {
             State current = queue.poll();
 
-            if (visited.contains(current)) {
-                continue;
+            if (!visited.add(current)) {
+                stats.duplicate();
+                continue; // Skip already visited states
             }
-            visited.add(current);
+            stats.closed(visited.size());
+            stats.layer(current.getG());
 
-            if (current.equals(goal)) {
+            if (current.isGoal()) {
                 while (current != null) {
                     path.add(current);
                     current = current.getParent();
@@ -145,65 +486,230 @@ public class Search {
                 Collections.reverse(path);
                 return true;
             }
-            List<State> children = current.generateChildrenUninformed(visited);
-            for (State child : children) {
-                child.setParent(current);
-                if (!visited.contains(child)) {
-                    queue.add(child);
-                    child.setParent(current);
+            context.expand();
+            long since = stats.clock();
+            List<Move> moves = current.generateMoves();
+            stats.generated(moves.size());
+            for (Move move : moves) {
+                if (visited.contains(current, move)) {
+                    stats.duplicate();
+                    continue;
                 }
+                queue.add(current.applyMove(move)); // Built only now that it is known to be new, with current as its parent
             }
+            stats.successorTime(since);
+            stats.open(queue.size());
         }
 
         return false;
     }
 
     /**
-     * Performs A* Search to find a solution path.
+     * Performs a level-synchronous parallel Breadth-First Search to find a solution path.
+     * Every BFS layer is expanded by a fork/join pool of the given size: the frontier is split into chunks by a
+     * parallel stream, each chunk collects the new children it finds on its own, and the chunks are joined into
+     * the next layer without any locking. Duplicates are removed through a StripedClosedSet shared by all threads.
+     * Children keep their parent reference, so the plan is rebuilt the same way as in bfs and is still optimal.
+     *
+     * @param start The initial state, which counts the unsatisfied facts of the goal to reach.
+     * @param path The solution path if found.
+     * @param threads The number of threads expanding each layer.
+     * @param exact Whether the closed list verifies fingerprint matches against the packed state.
+     * @return True if a path is found, otherwise false.
+     */
+    public static boolean parallelBfs(State start, ArrayList<State> path, int threads, boolean exact) {
+        SearchContext context = SearchContext.current(); // Checked between layers, the pool threads do not see it
+        SearchStats stats = context.stats(); // Thread-safe, the pool threads report to it directly
+        StripedClosedSet visited = new StripedClosedSet(exact);
+        visited.add(start);
+        List<State> frontier = List.of(start);
+        State found = start.isGoal() ? start : null;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int depth = 1; found == null && !frontier.isEmpty(); depth++) {
+                List<State> current = frontier;
+                stats.layer(depth);
+                long since = stats.clock();
+                frontier = pool.submit(() -> current.parallelStream()
+                        .flatMap(state -> {
+                            List<State> children = new ArrayList<>();
+                            List<Move> moves = state.generateMoves();
+                            stats.generated(moves.size());
+                            for (Move move : moves) {
+                                if (!visited.contains(state, move)) {
+                                    State child = state.applyMove(move);
+                                    if (visited.add(child)) { // Only one thread wins a state reached twice
+                                        children.add(child);
+                                        continue;
+                                    }
+                                }
+                                stats.duplicate();
+                            }
+                            return children.stream();
+                        })
+                        .toList()).get();
+                stats.successorTime(since); // Wall time of the layer, not summed over the pool threads
+                stats.open(frontier.size());
+                stats.closed(visited.size());
+                context.expand(current.size());
+                System.out.println("Layer " + depth + ": " + frontier.size() + " states.");
+                for (State child : frontier) {
+                    if (child.isGoal()) {
+                        found = child;
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        System.out.printf("Closed set: %d states, %.1f bytes per state.%n",
+                visited.size(), (double) visited.memoryBytes() / Math.max(1, visited.size()));
+        if (found == null) {
+            return false;
+        }
+        for (State s = found; s != null; s = s.getParent()) {
+            path.add(s);
+        }
+        Collections.reverse(path);
+        return true;
+    }
+
+    /**
+     * Performs Bidirectional Breadth-First Search to find a solution path.
+     * Moves in blocks world can always be undone, so the states one move before a state are the same as the states one
+     * move after it, and the goal can be searched backwards with the same successor generation. One frontier grows
+     * from the initial state and one from the goal state; every round the smaller frontier is expanded by one whole
+     * layer. Both sides record their states in their own hash index, and every generated state is looked up in the
+     * index of the other side. The shortest meeting found in a layer joins the two half-paths, which keeps the plan
+     * optimal while each side only has to reach about half of the solution depth. The goal must be complete, so
+     * that the goal state is the only state that reaches it.
      *
      * @param start The initial state.
      * @param goal The goal state to reach.
      * @param path The solution path if found.
      * @return True if a path is found, otherwise false.
      */
-    public static boolean aStar(State start, State goal, ArrayList<State> path) {
-        PriorityQueue<State> openList = new PriorityQueue<>(Comparator.comparingInt(State::getF)); // Order by f = g + h
-        Set<State> visited = new HashSet<>();
-        Map<State, State> parentMap = new HashMap<>();
-
-        // Initialize the start state
-        start.setG(0); // Cost to reach start is 0
-        start.setH(Problem.Heuristic(start, goal)); // Heuristic estimate
-        start.setF(start.getG() + start.getH()); // f = g + h
-        openList.add(start);
+    public static boolean biBfs(State start, State goal, ArrayList<State> path) {
+        if (start.isGoal()) {
+            path.add(start);
+            return true;
+        }
+        SearchContext context = SearchContext.current();
+        SearchStats stats = context.stats();
+        // Each index maps a state to the node that reached it first, whose parent points back to that side's root
+        Map<State, State> forward = new HashMap<>();
+        Map<State, State> backward = new HashMap<>();
+        start.setG(0);
+        goal.setG(0);
+        forward.put(start, start);
+        backward.put(goal, goal);
+        List<State> forwardFrontier = List.of(start);
+        List<State> backwardFrontier = List.of(goal);
 
-        while (!openList.isEmpty()) {
-            State current = openList.poll(); // Get state with lowest f value
+        while (!forwardFrontier.isEmpty() && !backwardFrontier.isEmpty()) {
+            boolean expandForward = forwardFrontier.size() <= backwardFrontier.size();
+            List<State> frontier = expandForward ? forwardFrontier : backwardFrontier;
+            Map<State, State> own = expandForward ? forward : backward;
+            Map<State, State> other = expandForward ? backward : forward;
 
-            if (visited.contains(current)) {
-                continue; // Skip already visited states
+            List<State> next = new ArrayList<>();
+            State meetOwn = null;
+            State meetOther = null;
+            stats.layer(frontier.get(0).getG() + 1);
+            long since = stats.clock();
+            for (State current : frontier) {
+                context.expand();
+                List<Move> moves = current.generateMoves();
+                stats.generated(moves.size());
+                for (Move move : moves) {
+                    State child = current.applyMove(move);
+                    if (own.putIfAbsent(child, child) != null) {
+                        stats.duplicate();
+                        continue; // Already reached from this side
+                    }
+                    State match = other.get(child);
+                    if (match != null && (meetOwn == null || child.getG() + match.getG() < meetOwn.getG() + meetOther.getG())) {
+                        meetOwn = child; // Shortest meeting of this layer so far
+                        meetOther = match;
+                    }
+                    next.add(child);
+                }
             }
-            visited.add(current); // Mark as visited
-
-            if (current.equals(goal)) {
-                // Build the path by tracing parentMap
-                while (current != null) {
-                    path.add(current);
-                    current = parentMap.get(current);
+            stats.successorTime(since);
+            stats.open(next.size());
+            stats.closed(forward.size() + backward.size());
+            if (meetOwn != null) {
+                State meetForward = expandForward ? meetOwn : meetOther;
+                State meetBackward = expandForward ? meetOther : meetOwn;
+                // Forward half from the initial state to the meeting state
+                for (State s = meetForward; s != null; s = s.getParent()) {
+                    path.add(s);
                 }
                 Collections.reverse(path);
+                // Backward half from the meeting state on to the goal
+                for (State s = meetBackward.getParent(); s != null; s = s.getParent()) {
+                    path.add(s);
+                }
                 return true;
             }
+            System.out.println((expandForward ? "Forward" : "Backward") + " layer " + next.getFirst().getG() + ": " + next.size() + " states.");
+            if (expandForward) {
+                forwardFrontier = next;
+            } else {
+                backwardFrontier = next;
+            }
+        }
+        return false;
+    }
 
-            for (State child : current.generateChildrenInformed(goal, visited)) {
-                if (!visited.contains(child)) {
-                    child.setG(current.getG() + 1); // Increment path cost
-                    child.setH(Problem.Heuristic(child, goal)); // Compute heuristic
-                    child.setF(child.getG() + child.getH()); // f = g + h
-                    openList.add(child); // Add to the priority queue
-                    parentMap.put(child, current); // Track the parent
-                }
+    /**
+     * Performs A* Search to find a solution path.
+     * Search nodes live in a NodeArena and the open list holds their indexes; the search walks a single working
+     * state from node to node, and full states are only built for the solution path.
+     *
+     * @param problem The problem to solve, providing the initial state, the goal state and the heuristic.
+     * @param path The solution path if found.
+     * @param visited The closed list of the search.
+     * @param upperBound Length of a known plan; children that cannot reach the goal within it are dropped.
+     * @return True if a path is found, otherwise false.
+     */
+    public static boolean aStar(Problem problem, ArrayList<State> path, ClosedSet visited, int upperBound) {
+        State start = problem.getInit();
+        SearchContext context = SearchContext.current();
+        SearchStats stats = context.stats();
+        State current = start.copy(); // Working state, moved to every node that is expanded
+        NodeArena nodes = new NodeArena(visited.isExact());
+        BucketQueue openList = new BucketQueue(nodes::f, nodes::h); // Order by f = g + h, lower h breaks ties
+
+        // Initialize the start node
+        int root = nodes.addRoot(current, problem.Heuristic(current)); // Cost to reach start is 0
+        nodes.index(root);
+        openList.push(root);
+
+        while (!openList.isEmpty()) {
+            int node = openList.poll(); // Get the node with the lowest f value
+            nodes.moveTo(current, node);
+
+            if (!visited.add(current)) {
+                continue; // Skip already visited states, otherwise mark as visited
+            }
+            stats.closed(visited.size());
+
+            if (current.isGoal()) {
+                printNodes(openList, nodes);
+                nodes.buildPath(start, node, path); // Replay the moves that led to the goal
+                return true;
             }
+
+            context.expand();
+            stats.layer(nodes.f(node));
+            expand(problem, current, node, nodes, openList, visited, upperBound, stats);
         }
 
         return false;
@@ -211,49 +717,104 @@ public class Search {
 
     /**
      * Performs Best-First Search to find a solution path.
+     * Uses the same node store and working state as aStar.
      *
-     * @param start The initial state.
-     * @param goal The goal state to reach.
+     * @param problem The problem to solve, providing the initial state, the goal state and the heuristic.
      * @param path The solution path if found.
+     * @param visited The closed list of the search.
+     * @param upperBound Length of a known plan; children that cannot reach the goal within it are dropped.
      * @return True if a path is found, otherwise false.
      */
-    public static boolean bestFirst(State start, State goal, ArrayList<State> path) {
-        PriorityQueue<State> openList = new PriorityQueue<>(Comparator.comparingInt(State::getH));
-        Set<State> visited = new HashSet<>();
-        Map<State, State> parentMap = new HashMap<>();
+    public static boolean bestFirst(Problem problem, ArrayList<State> path, ClosedSet visited, int upperBound) {
+        State start = problem.getInit();
+        SearchContext context = SearchContext.current();
+        SearchStats stats = context.stats();
+        State current = start.copy(); // Working state, moved to every node that is expanded
+        NodeArena nodes = new NodeArena(visited.isExact());
+        BucketQueue openList = new BucketQueue(nodes::h, nodes::g); // Order by h, lower g breaks ties
 
-        // Initialize the start state
-        start.setH(Problem.Heuristic(start, goal)); // Heuristic estimate
-        openList.add(start);
+        // Initialize the start node
+        int root = nodes.addRoot(current, problem.Heuristic(current)); // Heuristic estimate
+        nodes.index(root);
+        openList.push(root);
 
         while (!openList.isEmpty()) {
-            State current = openList.poll(); // Get state with lowest h value
+            int node = openList.poll(); // Get the node with the lowest h value
+            nodes.moveTo(current, node);
 
-            if (visited.contains(current)) {
-                continue; // Skip already visited states
+            if (!visited.add(current)) {
+                continue; // Skip already visited states, otherwise mark as visited
             }
-            visited.add(current); // Mark as visited
+            stats.closed(visited.size());
 
-            if (current.equals(goal)) {
-                // Build the path by tracing parentMap
-                while (current != null) {
-                    path.add(current);
-                    current = parentMap.get(current);
-                }
-                Collections.reverse(path);
+            if (current.isGoal()) {
+                printNodes(openList, nodes);
+                nodes.buildPath(start, node, path); // Replay the moves that led to the goal
                 return true;
             }
 
-            for (State child : current.generateChildrenInformed(goal, visited)) {
-                if (!visited.contains(child)) {
-                    child.setH(Problem.Heuristic(child, goal)); // Compute heuristic
-                    openList.add(child); // Add to the priority queue
-                    parentMap.put(child, current); // Track the parent
-                }
-            }
+            context.expand();
+            stats.layer(nodes.h(node));
+            expand(problem, current, node, nodes, openList, visited, upperBound, stats);
         }
 
         return false; // No solution found
     }
-}
 
+    /*
+    Adds the children of the node that are not closed to the arena and the open list. A child whose state
+    is already queued with a g at most as low is dropped; one with a lower g replaces the queued node.
+    */
+    private static void expand(Problem problem, State current, int node, NodeArena nodes, BucketQueue openList,
+                               ClosedSet visited, int upperBound, SearchStats stats) {
+        long since = stats.clock();
+        int lowerBound = upperBound == Integer.MAX_VALUE ? 0 : problem.lowerBound(current);
+        int childG = nodes.g(node) + 1;
+        List<Move> moves = current.generateMoves(nodes.movedBlock(node)); // The working state does not record its move
+        stats.generated(moves.size());
+        for (Move move : moves) {
+            if (visited.contains(current, move)) {
+                stats.duplicate();
+                continue;
+            }
+            if (upperBound != Integer.MAX_VALUE && childG + lowerBound + problem.lowerBoundChange(move) > upperBound) {
+                continue; // The goal cannot be reached through the child within the known plan length
+            }
+            long fingerprint = current.fingerprintAfter(move);
+            int known = nodes.find(node, move, fingerprint);
+            if (known != -1 && nodes.g(known) <= childG) {
+                stats.duplicate();
+                continue; // Already reached with a path at most as long
+            }
+            if (known != -1 && openList.contains(known)) {
+                openList.remove(known); // Replaced in place by the cheaper node below
+            }
+            int child = nodes.add(node, fingerprint, move, problem.Heuristic(current, move));
+            nodes.index(child);
+            openList.push(child);
+        }
+        stats.successorTime(since);
+        stats.open(openList.size());
+    }
+
+    // Prints the size of the search structures at the end of aStar and bestFirst
+    private static void printNodes(BucketQueue openList, NodeArena nodes) {
+        System.out.printf("Open list peak: %d nodes, %d nodes stored in %.1f bytes per node.%n",
+                openList.peakSize(), nodes.size(), (double) nodes.memoryBytes() / Math.max(1, nodes.size()));
+    }
+
+    // A state on the explicit stack of dfs and iddfs: the move that led to it and the next move to try.
+    // iddfs also keeps the ordered moves of the state, dfs enumerates them by index with State.nextMoveIndex.
+    private static final class Frame {
+        final Move move;
+        final List<Move> moves;
+        final int h;
+        int next;
+
+        Frame(Move move, List<Move> moves, int h) {
+            this.move = move;
+            this.moves = moves;
+            this.h = h;
+        }
+    }
+}
\ No newline at end of file
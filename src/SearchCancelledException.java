@@ -0,0 +1,8 @@
+// Thrown out of a search loop when the SearchContext of the run is past its deadline or was cancelled
+public class SearchCancelledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public SearchCancelledException(String reason) {
+        super(reason);
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    Per-run state that every search loop reports to: the number of nodes expanded and a cooperative deadline.
+
+    The context of a run is bound to the thread that runs it and inherited by the threads a search starts
+    itself (such as the HDA* workers), so the searches find it without it being passed through every method.
+    Every expansion calls expand(), which counts the node and throws SearchCancelledException once the
+    deadline has passed or the run was cancelled; the search unwinds and the thread is free for the next run.
+    Threads without a context of their own share one that never expires, so a plain single run behaves as
+    before and is still stopped by the SIGAlarm. A child context shares the deadline of its parent and adds
+    its expansions to it, but can be cancelled on its own, so one run can stop some of the searches it started.
+    A context also carries the SearchStats the search loops report to, DISABLED unless the run asked for --stats.
+*/
+public class SearchContext {
+    private static final InheritableThreadLocal<SearchContext> CURRENT = new InheritableThreadLocal<>();
+    private static final SearchContext UNBOUNDED = new SearchContext(Long.MAX_VALUE, null, SearchStats.DISABLED);
+
+    private final long deadline; // System.nanoTime() value after which the run is stopped
+    private final SearchContext parent; // Context that also counts these expansions and whose cancellation stops this one, or null
+    private final SearchStats stats;
+    private final LongAdder expanded = new LongAdder(); // Summed over all threads of the run
+    private volatile boolean cancelled;
+
+    private SearchContext(long deadline, SearchContext parent, SearchStats stats) {
+        this.deadline = deadline;
+        this.parent = parent;
+        this.stats = stats;
+    }
+
+    // Creates a context whose deadline is the given number of seconds from now
+    public static SearchContext withTimeout(double seconds) {
+        return new SearchContext(System.nanoTime() + (long) (seconds * 1e9), null, SearchStats.DISABLED);
+    }
+
+    // Creates a context with the same deadline that is also stopped when this one is cancelled
+    public SearchContext child() {
+        return new SearchContext(deadline, this, stats);
+    }
+
+    // Creates a child context whose searches report to the given stats
+    public SearchContext child(SearchStats stats) {
+        return new SearchContext(deadline, this, stats);
+    }
+
+    // Returns the context of the current thread
+    public static SearchContext current() {
+        SearchContext context = CURRENT.get();
+        return context == null ? UNBOUNDED : context;
+    }
+
+    // Binds the context to the current thread, and to the threads it starts from now on
+    public void bind() {
+        if (this == UNBOUNDED) {
+            CURRENT.remove(); // The context of threads without one
+        } else {
+            CURRENT.set(this);
+        }
+    }
+
+    // Removes the context of the current thread
+    public static void unbind() {
+        CURRENT.remove();
+    }
+
+    // Counts an expanded node and stops the run if it is over
+    public void expand() {
+        for (SearchContext context = this; context != null; context = context.parent) {
+            context.expanded.increment();
+        }
+        check();
+    }
+
+    // Counts a number of expanded nodes at once, for searches that expand whole layers
+    public void expand(long nodes) {
+        for (SearchContext context = this; context != null; context = context.parent) {
+            context.expanded.add(nodes);
+        }
+        check();
+    }
+
+    // Throws SearchCancelledException if the deadline has passed or the run was cancelled
+    public void check() {
+        for (SearchContext context = this; context != null; context = context.parent) {
+            if (context.cancelled) {
+                throw new SearchCancelledException("cancelled");
+            }
+        }
+        if (System.nanoTime() > deadline) {
+            throw new SearchCancelledException("deadline passed");
+        }
+    }
+
+    // Asks the run to stop at its next expansion
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Returns the stats the searches of the run report to
+    public SearchStats stats() {
+        return stats;
+    }
+
+    // Returns the number of nodes expanded so far
+    public long expanded() {
+        return expanded.sum();
+    }
+}
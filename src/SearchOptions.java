@@ -0,0 +1,204 @@
+import java.util.List;
+
+/*
+    Optional settings that can follow the three required command-line arguments, for example
+
+    java -jar blocks-world.jar astar probBLOCKS-10-0.pddl solution.txt --exact
+
+    Every option has a default, so a plain three-argument run behaves as before.
+*/
+public class SearchOptions implements Cloneable {
+    private boolean exactClosedSet; // --exact: verify fingerprint matches in the closed set against the packed state
+    private boolean domainBound; // --domain-bound: prune searches with the plan length of the domain-specific planner
+    private int depthBound; // --depth-bound=N: largest depth limit of iddfs, 0 for the default of two moves per block
+    private boolean patternDatabase; // --heuristic=pdb: use the pattern database heuristic instead of the default one
+    private int patternSize = 6; // --pattern-size=K: blocks per pattern of the pattern database
+    private double weight = 3.0; // --weight=W: first heuristic weight of the anytime search, lowered by 0.5 per round
+    private int threads = Runtime.getRuntime().availableProcessors(); // --threads=N: worker threads of parallel searches
+    private int jobs = Runtime.getRuntime().availableProcessors(); // --jobs=N: jobs the batch mode runs at once
+    private int timeout = 60; // --timeout=S: seconds every batch job may search
+    private List<String> portfolio = List.of("best", "astar", "bibreadth"); // --portfolio=A,B,...: algorithms the portfolio races
+    private boolean stats; // --stats: report telemetry of the search loops and write Output/<output>.stats.json
+    private int progress = 5; // --progress=S: seconds between the progress lines of --stats
+    private double quality; // --quality=W: make the portfolio wait for a plan proven within W times the optimum, 0 for the first plan
+    private boolean cache; // --cache: look plans up in the plan cache before searching and store the plans found
+    private int cacheSize = 64; // --cache-size=N: plans the cache keeps in memory
+    private boolean pruning = true; // --no-prune: generate every legal move, see State.generateMoves
+
+    // Parses the options found in args, starting at index from
+    public static SearchOptions parse(String[] args, int from) {
+        SearchOptions options = new SearchOptions();
+        for (int i = from; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--exact")) {
+                options.exactClosedSet = true;
+            } else if (arg.equals("--stats")) {
+                options.stats = true;
+            } else if (arg.equals("--no-prune")) {
+                options.pruning = false;
+            } else if (arg.equals("--cache")) {
+                options.cache = true;
+            } else if (arg.startsWith("--cache-size=")) {
+                options.cacheSize = intValue(arg);
+            } else if (arg.startsWith("--progress=")) {
+                options.progress = intValue(arg);
+            } else if (arg.equals("--domain-bound")) {
+                options.domainBound = true;
+            } else if (arg.startsWith("--heuristic=")) {
+                options.patternDatabase = heuristicValue(arg);
+            } else if (arg.startsWith("--pattern-size=")) {
+                options.patternSize = intValue(arg);
+                if (options.patternSize > PatternDatabase.MAX_PATTERN_SIZE) {
+                    throw new IllegalArgumentException("Patterns can have at most " + PatternDatabase.MAX_PATTERN_SIZE + " blocks: " + arg);
+                }
+            } else if (arg.startsWith("--weight=")) {
+                options.weight = weightValue(arg);
+            } else if (arg.startsWith("--jobs=")) {
+                options.jobs = intValue(arg);
+            } else if (arg.startsWith("--timeout=")) {
+                options.timeout = intValue(arg);
+            } else if (arg.startsWith("--threads=")) {
+                options.threads = intValue(arg);
+            } else if (arg.startsWith("--portfolio=")) {
+                options.portfolio = portfolioValue(arg);
+            } else if (arg.startsWith("--quality=")) {
+                options.quality = weightValue(arg);
+            } else if (arg.startsWith("--depth-bound=")) {
+                options.depthBound = intValue(arg);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return options;
+    }
+
+    // Reads the positive integer after the '=' of an option
+    private static int intValue(String arg) {
+        String value = arg.substring(arg.indexOf('=') + 1);
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below together with non-positive values
+        }
+        throw new IllegalArgumentException("Expected a positive number in option: " + arg);
+    }
+
+    // Reads the heuristic name, returning true for the pattern database
+    private static boolean heuristicValue(String arg) {
+        String value = arg.substring(arg.indexOf('=') + 1);
+        if (value.equals("pdb")) {
+            return true;
+        }
+        if (value.equals("default")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Expected 'default' or 'pdb' in option: " + arg);
+    }
+
+    // Reads the comma-separated algorithms of a portfolio, which cannot contain the portfolio itself
+    private static List<String> portfolioValue(String arg) {
+        List<String> algorithms = List.of(arg.substring(arg.indexOf('=') + 1).split(","));
+        for (String algorithm : algorithms) {
+            if (!Search.ALGORITHMS.contains(algorithm) || algorithm.equals("portfolio")) {
+                throw new IllegalArgumentException("Unknown portfolio algorithm '" + algorithm + "' in option: " + arg);
+            }
+        }
+        return algorithms;
+    }
+
+    // Reads a heuristic weight, which must be at least 1
+    private static double weightValue(String arg) {
+        try {
+            double parsed = Double.parseDouble(arg.substring(arg.indexOf('=') + 1));
+            if (parsed >= 1.0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below together with weights below 1
+        }
+        throw new IllegalArgumentException("Expected a weight of at least 1 in option: " + arg);
+    }
+
+    public boolean isPatternDatabase() {
+        return patternDatabase;
+    }
+
+    public int getPatternSize() {
+        return patternSize;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public int getDepthBound() {
+        return depthBound;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public List<String> getPortfolio() {
+        return portfolio;
+    }
+
+    public double getQuality() {
+        return quality;
+    }
+
+    public boolean isStats() {
+        return stats;
+    }
+
+    public int getProgress() {
+        return progress;
+    }
+
+    public boolean isCache() {
+        return cache;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public boolean isPruning() {
+        return pruning;
+    }
+
+    // Returns a copy of these options without --cache, for searches that run under a cache lookup of their own
+    public SearchOptions withoutCache() {
+        try {
+            SearchOptions copy = (SearchOptions) clone();
+            copy.cache = false;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public boolean isDomainBound() {
+        return domainBound;
+    }
+
+    public boolean isExactClosedSet() {
+        return exactClosedSet;
+    }
+
+    // Creates the closed list a search should use
+    public ClosedSet newClosedSet() {
+        return new ClosedSet(exactClosedSet);
+    }
+}
@@ -0,0 +1,276 @@
+import jdk.jfr.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    Telemetry of one search run, switched on with --stats.
+
+    The search loops report the successors they generate, the ones they drop as duplicates, the size of
+    their open and closed lists, the layer they expand (f for A* and IDA*, h for best-first, the depth or
+    depth limit for the uninformed searches) and the time they spend generating successors; Problem reports
+    the time spent in the heuristic. The expansions are the ones the SearchContext of the run counts.
+    Successor generation includes the heuristic of the successors in the searches that compute it while
+    generating them, so the heuristic share of it shows where an expansion spends its time. The successors
+    generated per expansion are the branching factor the search actually sees, after the pruning of
+    State.generateMoves; a run with --no-prune shows the branching factor without it.
+
+    While the run lasts, a progress line is printed every --progress seconds and recorded as a
+    blocksworld.SearchProgress JFR event; entering a new layer is recorded as a blocksworld.SearchLayer event.
+    At the end the totals are written to Output/<output>.stats.json next to the plan, also when the SIGAlarm
+    ends the JVM, so a run that hit the time limit shows how far it got.
+
+    Without --stats every search gets DISABLED, whose methods return after a single check of a final field.
+*/
+public final class SearchStats {
+    public static final SearchStats DISABLED = new SearchStats();
+
+    private final boolean enabled;
+    private final String algorithm;
+    private final String output;
+    private final long progressNanos;
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder heuristicNanos = new LongAdder();
+    private final LongAdder successorNanos = new LongAdder();
+    private final LongAccumulator peakOpen = new LongAccumulator(Long::max, 0);
+    private final LongAccumulator peakClosed = new LongAccumulator(Long::max, 0);
+    private volatile int layer = -1;
+
+    private SearchContext context;
+    private long start;
+    private Thread reporter;
+    private Thread shutdownHook;
+    private boolean written;
+
+    private SearchStats() {
+        this.enabled = false;
+        this.algorithm = null;
+        this.output = null;
+        this.progressNanos = 0;
+    }
+
+    public SearchStats(String algorithm, String output, int progressSeconds) {
+        this.enabled = true;
+        this.algorithm = algorithm;
+        this.output = output;
+        this.progressNanos = progressSeconds * 1_000_000_000L;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Counts successors produced by the successor generation, before duplicates are dropped
+    public void generated(int successors) {
+        if (enabled) {
+            generated.add(successors);
+        }
+    }
+
+    // Counts a successor dropped because its state was already seen
+    public void duplicate() {
+        if (enabled) {
+            duplicates.increment();
+        }
+    }
+
+    // Records the current size of the open list (or stack, or frontier)
+    public void open(long size) {
+        if (enabled) {
+            peakOpen.accumulate(size);
+        }
+    }
+
+    // Records the current size of the closed list
+    public void closed(long size) {
+        if (enabled) {
+            peakClosed.accumulate(size);
+        }
+    }
+
+    // Records the layer being expanded, with a JFR event whenever it changes
+    public void layer(int value) {
+        if (enabled && value != layer) {
+            layer = value;
+            LayerEvent event = new LayerEvent();
+            if (event.shouldCommit()) {
+                event.algorithm = algorithm;
+                event.layer = value;
+                event.expanded = context.expanded();
+                event.generated = generated.sum();
+                event.commit();
+            }
+        }
+    }
+
+    // Returns the time to pass to heuristicTime or successorTime, or 0 without --stats
+    public long clock() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // Adds the time since the clock value to the heuristic
+    public void heuristicTime(long since) {
+        if (enabled) {
+            heuristicNanos.add(System.nanoTime() - since);
+        }
+    }
+
+    // Adds the time since the clock value to successor generation
+    public void successorTime(long since) {
+        if (enabled) {
+            successorNanos.add(System.nanoTime() - since);
+        }
+    }
+
+    // Starts the progress lines of the run, whose expansions the context counts
+    public synchronized void start(SearchContext context) {
+        this.context = context;
+        this.start = System.nanoTime();
+        reporter = new Thread(this::report, "stats-" + algorithm);
+        reporter.setDaemon(true);
+        reporter.start();
+        shutdownHook = new Thread(() -> finish("time limit", -1), "stats-exit-" + algorithm);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    // Stops the progress lines and writes the stats file, once
+    public void finish(String status, int moves) {
+        synchronized (this) {
+            if (written) {
+                return;
+            }
+            written = true;
+        }
+        reporter.interrupt();
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // The JVM is already shutting down, the hook finds the stats written
+            }
+        }
+        System.out.println("Stats: " + line() + ", " + status + ".");
+        write(status, moves);
+    }
+
+    private void report() {
+        try {
+            while (true) {
+                Thread.sleep(progressNanos / 1_000_000);
+                System.out.println("Progress: " + line() + ".");
+                ProgressEvent event = new ProgressEvent();
+                if (event.shouldCommit()) {
+                    event.algorithm = algorithm;
+                    event.expanded = context.expanded();
+                    event.generated = generated.sum();
+                    event.duplicates = duplicates.sum();
+                    event.expandedPerSecond = expandedPerSecond();
+                    event.branchingFactor = branchingFactor();
+                    event.peakOpen = peakOpen.get();
+                    event.peakClosed = peakClosed.get();
+                    event.layer = layer;
+                    event.heuristicSeconds = heuristicNanos.sum() / 1e9;
+                    event.successorSeconds = successorNanos.sum() / 1e9;
+                    event.commit();
+                }
+            }
+        } catch (InterruptedException e) {
+            // The run is over
+        }
+    }
+
+    private double seconds() {
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private double expandedPerSecond() {
+        return context.expanded() / Math.max(seconds(), 1e-9);
+    }
+
+    // Successors generated per expansion
+    private double branchingFactor() {
+        return generated.sum() / (double) Math.max(context.expanded(), 1);
+    }
+
+    private String line() {
+        return String.format(Locale.ROOT, "%.1f s, %d expanded (%.0f/s), %d generated (%.2f per expansion), %d duplicates, "
+                        + "open peak %d, closed peak %d, layer %d, successors %.2f s, heuristic %.2f s",
+                seconds(), context.expanded(), expandedPerSecond(), generated.sum(), branchingFactor(), duplicates.sum(),
+                peakOpen.get(), peakClosed.get(), layer, successorNanos.sum() / 1e9, heuristicNanos.sum() / 1e9);
+    }
+
+    private void write(String status, int moves) {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get("Output", output + ".stats.json")))) {
+            out.println("{");
+            out.printf(Locale.ROOT, "  \"algorithm\": \"%s\",%n", algorithm);
+            out.printf(Locale.ROOT, "  \"status\": \"%s\",%n", status);
+            out.printf(Locale.ROOT, "  \"moves\": %s,%n", moves < 0 ? "null" : String.valueOf(moves));
+            out.printf(Locale.ROOT, "  \"seconds\": %.3f,%n", seconds());
+            out.printf(Locale.ROOT, "  \"expanded\": %d,%n", context.expanded());
+            out.printf(Locale.ROOT, "  \"generated\": %d,%n", generated.sum());
+            out.printf(Locale.ROOT, "  \"branchingFactor\": %.2f,%n", branchingFactor());
+            out.printf(Locale.ROOT, "  \"duplicates\": %d,%n", duplicates.sum());
+            out.printf(Locale.ROOT, "  \"expandedPerSecond\": %.1f,%n", expandedPerSecond());
+            out.printf(Locale.ROOT, "  \"peakOpen\": %d,%n", peakOpen.get());
+            out.printf(Locale.ROOT, "  \"peakClosed\": %d,%n", peakClosed.get());
+            out.printf(Locale.ROOT, "  \"layer\": %d,%n", layer);
+            out.printf(Locale.ROOT, "  \"successorSeconds\": %.3f,%n", successorNanos.sum() / 1e9);
+            out.printf(Locale.ROOT, "  \"heuristicSeconds\": %.3f%n", heuristicNanos.sum() / 1e9);
+            out.println("}");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Name("blocksworld.SearchProgress")
+    @Label("Search Progress")
+    @Category("Blocks World")
+    @Description("Counters of a search run, recorded with every progress line")
+    static final class ProgressEvent extends Event {
+        @Label("Algorithm")
+        String algorithm;
+        @Label("Expanded")
+        long expanded;
+        @Label("Generated")
+        long generated;
+        @Label("Duplicates")
+        long duplicates;
+        @Label("Expanded per Second")
+        double expandedPerSecond;
+        @Label("Branching Factor")
+        @Description("Successors generated per expansion")
+        double branchingFactor;
+        @Label("Open List Peak")
+        long peakOpen;
+        @Label("Closed List Peak")
+        long peakClosed;
+        @Label("Layer")
+        int layer;
+        @Label("Heuristic Seconds")
+        double heuristicSeconds;
+        @Label("Successor Generation Seconds")
+        double successorSeconds;
+    }
+
+    @Name("blocksworld.SearchLayer")
+    @Label("Search Layer")
+    @Category("Blocks World")
+    @Description("A search run starts expanding a new layer")
+    static final class LayerEvent extends Event {
+        @Label("Algorithm")
+        String algorithm;
+        @Label("Layer")
+        int layer;
+        @Label("Expanded")
+        long expanded;
+        @Label("Generated")
+        long generated;
+    }
+}
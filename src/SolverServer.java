@@ -0,0 +1,433 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Server mode: keeps one JVM running and solves the requests sent to it, for example
+
+    java -jar blocks-world.jar serve --heuristic=pdb          (requests on stdin, responses on stdout)
+    java -jar blocks-world.jar serve 7070 --heuristic=pdb     (requests on a socket of 127.0.0.1, port 7070)
+
+    Every request is a JSON object on a line of its own, such as
+
+    {"id": 1, "algorithm": "astar", "problem": "probBLOCKS-5-0.pddl", "timeout": 2}
+    {"id": 2, "algorithm": "best", "pddl": "(define (problem p) (:domain blocks) (:objects a b) ...)"}
+
+    with the algorithm and either the name of a file in Problems/ or the problem itself in "pddl". The
+    optional "timeout" is the deadline of the request in seconds (--timeout of the server by default), and
+    "options" is a list of options such as ["--stats"] that follow the options of the server command line.
+    The answer is a JSON line with the id, the status, the moves and the plan, the time spent parsing and
+    searching and the expanded nodes; with --stats it also carries the totals of the stats file.
+
+    The process starts, loads its classes and warms up its JIT only once, so small problems are answered
+    in milliseconds once a few requests have run. Each request runs on a virtual thread of its own, under
+    a SearchContext with the deadline of the request, so a search that runs past it is stopped at its next
+    expansion without the SIGAlarm ending the server. What the searches print is discarded through the
+    ThreadLog. Responses are written as the requests finish, so a fast request does not wait for a slow
+    one sent before it; the id tells them apart.
+*/
+public class SolverServer {
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private final String[] serverOptions;
+    private final SearchOptions options;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong requests = new AtomicLong(); // Numbers the plan files of the requests
+
+    public SolverServer(String[] serverOptions) {
+        this.serverOptions = serverOptions;
+        this.options = SearchOptions.parse(serverOptions, 0);
+    }
+
+    /**
+     * Parses the server arguments: an optional port, then the options every request starts from.
+     *
+     * @param args The command-line arguments, starting with "serve".
+     */
+    public static void run(String[] args) {
+        int from = 1;
+        int port = -1;
+        if (args.length > 1 && args[1].matches("\\d+")) {
+            port = Integer.parseInt(args[1]);
+            from = 2;
+        }
+        SolverServer server = new SolverServer(Arrays.copyOfRange(args, from, args.length));
+        ThreadLog.install();
+        try {
+            if (port < 0) {
+                PrintStream console = ThreadLog.console();
+                server.serve(System.in, console);
+            } else {
+                server.listen(port);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            server.executor.shutdownNow();
+            ThreadLog.uninstall();
+        }
+    }
+
+    // Accepts connections on the loopback address until the process ends, serving each on its own thread
+    private void listen(int port) throws IOException {
+        try (ServerSocket socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            ThreadLog.console().println("Serving on " + socket.getLocalSocketAddress());
+            while (true) {
+                Socket connection = socket.accept();
+                executor.submit(() -> {
+                    try (connection) {
+                        serve(connection.getInputStream(), new PrintStream(connection.getOutputStream(), true, StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        // The client went away, its requests are dropped
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+    // Answers the request lines of one input until it ends, then waits for the requests still running
+    private void serve(InputStream input, PrintStream responses) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        List<Future<?>> running = new ArrayList<>();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String request = line;
+            running.add(executor.submit(() -> {
+                String response = answer(request);
+                synchronized (responses) {
+                    responses.println(response);
+                }
+            }));
+            running.removeIf(Future::isDone);
+        }
+        for (Future<?> future : running) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    // Solves one request and returns its response line
+    private String answer(String line) {
+        Object id = null;
+        String output = "server-" + requests.incrementAndGet() + ".txt";
+        long start = System.nanoTime();
+        double parseSeconds = 0;
+        String status;
+        int moves = -1;
+        List<String> plan = List.of();
+        String stats = null;
+        String error = null;
+        SearchContext context = SearchContext.withTimeout(options.getTimeout());
+        ThreadLog.bind(DISCARD);
+        try {
+            Map<String, Object> request = Json.parseObject(line);
+            id = request.get("id");
+            String algorithm = string(request, "algorithm");
+            if (algorithm == null || !Search.ALGORITHMS.contains(algorithm)) {
+                throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+            }
+            SearchOptions requestOptions = requestOptions(request.get("options"));
+            Object timeout = request.get("timeout");
+            if (timeout != null && !(timeout instanceof Double)) {
+                throw new IllegalArgumentException("Expected a number of seconds in \"timeout\"");
+            }
+            context = SearchContext.withTimeout(timeout != null ? (Double) timeout : requestOptions.getTimeout());
+            context.bind();
+            String pddl = string(request, "pddl");
+            String file = string(request, "problem");
+            if ((pddl == null) == (file == null)) {
+                throw new IllegalArgumentException("Expected either \"problem\" or \"pddl\"");
+            }
+            Problem problem = (pddl != null ? new PDDLParser("request", pddl) : new PDDLParser(file)).parseInputFile();
+            parseSeconds = (System.nanoTime() - start) / 1e9;
+            moves = Search.SelectSearch(problem, algorithm, output, requestOptions);
+            status = moves >= 0 ? "solved" : "no plan";
+            plan = readPlan(output, moves);
+            stats = readStats(output, requestOptions);
+        } catch (SearchCancelledException e) {
+            status = "timeout";
+        } catch (OutOfMemoryError e) {
+            status = "out of memory";
+        } catch (RuntimeException e) {
+            status = "error";
+            error = String.valueOf(e.getMessage());
+        } finally {
+            ThreadLog.unbind(null);
+            SearchContext.unbind();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        StringBuilder response = new StringBuilder("{\"id\": ").append(Json.write(id))
+                .append(", \"status\": ").append(Json.write(status));
+        if (error != null) {
+            response.append(", \"error\": ").append(Json.write(error));
+        }
+        response.append(", \"moves\": ").append(moves < 0 ? "null" : String.valueOf(moves))
+                .append(", \"plan\": ").append(Json.write(plan))
+                .append(String.format(Locale.ROOT, ", \"parseSeconds\": %.6f, \"seconds\": %.6f", parseSeconds, seconds))
+                .append(", \"expanded\": ").append(context.expanded());
+        if (stats != null) {
+            response.append(", \"stats\": ").append(stats);
+        }
+        return response.append('}').toString();
+    }
+
+    // Appends the options of the request to those of the server, so the request wins where both set one
+    private SearchOptions requestOptions(Object value) {
+        if (value == null) {
+            return options;
+        }
+        if (!(value instanceof List<?> list)) {
+            throw new IllegalArgumentException("Expected a list of strings in \"options\"");
+        }
+        List<String> args = new ArrayList<>(List.of(serverOptions));
+        for (Object option : list) {
+            args.add(String.valueOf(option));
+        }
+        return SearchOptions.parse(args.toArray(new String[0]), 0);
+    }
+
+    // Reads the moves the search wrote to Output/ and removes the file
+    private static List<String> readPlan(String output, int moves) {
+        Path file = Paths.get("Output", output);
+        try {
+            if (moves <= 0 || !Files.exists(file)) {
+                Files.deleteIfExists(file);
+                return List.of();
+            }
+            List<String> lines = Files.readAllLines(file);
+            Files.delete(file);
+            return lines;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reads the stats file of a run with --stats as one line of JSON and removes it, or returns null
+    private static String readStats(String output, SearchOptions options) {
+        Path file = Paths.get("Output", output + ".stats.json");
+        if (!options.isStats() || !Files.exists(file)) {
+            return null;
+        }
+        try {
+            String stats = String.join(" ", Files.readAllLines(file)).replaceAll("\\s+", " ");
+            Files.delete(file);
+            return stats;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String string(Map<String, Object> request, String key) {
+        Object value = request.get(key);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("Expected a string in \"" + key + "\"");
+        }
+        return (String) value;
+    }
+
+    /*
+    The little JSON the server needs: objects, lists, strings, numbers (as Double), booleans and null
+    are read, and strings, numbers and lists of strings are written.
+    */
+    static final class Json {
+        private final String text;
+        private int position;
+
+        private Json(String text) {
+            this.text = text;
+        }
+
+        @SuppressWarnings("unchecked")
+        static Map<String, Object> parseObject(String text) {
+            Json json = new Json(text);
+            Object value = json.value();
+            json.skipSpace();
+            if (!(value instanceof Map) || json.position != text.length()) {
+                throw new IllegalArgumentException("Expected a JSON object on the line");
+            }
+            return (Map<String, Object>) value;
+        }
+
+        private Object value() {
+            skipSpace();
+            if (position == text.length()) {
+                throw error("a value");
+            }
+            char c = text.charAt(position);
+            if (c == '{') {
+                Map<String, Object> object = new LinkedHashMap<>();
+                position++;
+                skipSpace();
+                if (peek('}')) {
+                    return object;
+                }
+                do {
+                    skipSpace();
+                    String key = string();
+                    skipSpace();
+                    expect(':');
+                    object.put(key, value());
+                    skipSpace();
+                } while (peek(','));
+                expect('}');
+                return object;
+            }
+            if (c == '[') {
+                List<Object> list = new ArrayList<>();
+                position++;
+                skipSpace();
+                if (peek(']')) {
+                    return list;
+                }
+                do {
+                    list.add(value());
+                    skipSpace();
+                } while (peek(','));
+                expect(']');
+                return list;
+            }
+            if (c == '"') {
+                return string();
+            }
+            if (text.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            }
+            if (text.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            }
+            if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+            int start = position;
+            while (position < text.length() && "+-.eE0123456789".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            try {
+                return Double.parseDouble(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                throw error("a value");
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (position == text.length()) {
+                    throw error("the end of the string");
+                }
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position == text.length()) {
+                    throw error("an escape");
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n' -> value.append('\n');
+                    case 't' -> value.append('\t');
+                    case 'r' -> value.append('\r');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'u' -> {
+                        if (position + 4 > text.length()) {
+                            throw error("four hex digits");
+                        }
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                    }
+                    default -> value.append(escaped); // '"', '\\' and '/'
+                }
+            }
+        }
+
+        private void skipSpace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        // Consumes c if it comes next
+        private boolean peek(char c) {
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!peek(c)) {
+                throw error("'" + c + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String expected) {
+            return new IllegalArgumentException("Expected " + expected + " at character " + position + " of the request");
+        }
+
+        // Writes a string, a number, a list or null as JSON
+        static String write(Object value) {
+            if (value == null) {
+                return "null";
+            }
+            if (value instanceof Double number) {
+                return number == Math.rint(number) && !number.isInfinite() ? String.valueOf(number.longValue()) : number.toString();
+            }
+            if (value instanceof List<?> list) {
+                StringJoiner joined = new StringJoiner(", ", "[", "]");
+                for (Object element : list) {
+                    joined.add(write(element));
+                }
+                return joined.toString();
+            }
+            if (value instanceof Boolean) {
+                return value.toString();
+            }
+            String text = value.toString();
+            StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '"' -> quoted.append("\\\"");
+                    case '\\' -> quoted.append("\\\\");
+                    case '\n' -> quoted.append("\\n");
+                    case '\r' -> quoted.append("\\r");
+                    case '\t' -> quoted.append("\\t");
+                    default -> {
+                        if (c < ' ') {
+                            quoted.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            quoted.append(c);
+                        }
+                    }
+                }
+            }
+            return quoted.append('"').toString();
+        }
+    }
+}
@@ -1,22 +1,28 @@
 import java.util.*;
 
 public class State implements Comparable<State> {
+    public static final int TABLE = -1; // Marker for "sits on the table" in the on[] array
+
     private State Parent; // Reference to the parent state (used for backtracking in pathfinding)
-    private final ArrayList<Substack> state; // Represents the current configuration of stacks
+    private Move move; // The move that produced this state from its parent, null for a state built from an on[] array
+    private final int[] on; // on[i] is the id of the block that block i sits on, or TABLE
+    private long hash; // Zobrist fingerprint of on[], kept up to date move by move
+    private Goal goal; // The goal the state is searched towards, shared with every state derived from it
+    private int unsatisfied = -1; // Facts of the goal the state does not satisfy, kept up to date move by move; -1 without a goal
+    private boolean pruning = true; // Whether generateMoves leaves out the moves no shortest plan needs, see generateMoves
     private int g;  // Cost to reach this state (e.g., number of moves from the initial state)
     private int h;  // Heuristic value (estimate of cost to reach the goal)
     private int f;  // Total cost (f = g + h), used in A* search
 
-    // Constructor to initialize the state with a variable number of substacks
-    public State(Substack... substacks) {
-        state = new ArrayList<>();
-        Collections.addAll(state, substacks);
-        Parent = null; // Default to no parent
+    // Constructor to initialize the state from an on[] array (the array is owned by the state afterwards)
+    public State(int[] on) {
+        this(on, Zobrist.hash(on));
     }
 
-    // Constructor to initialize the state with a list of substacks
-    public State(List<Substack> tempState1) {
-        state = new ArrayList<>(tempState1); // Create a copy of the provided list
+    // Constructor for a child whose fingerprint was already derived from its parent
+    private State(int[] on, long hash) {
+        this.on = on;
+        this.hash = hash;
         Parent = null; // Default to no parent
     }
 
@@ -25,36 +31,93 @@ public class State implements Comparable<State> {
         Parent = parent;
     }
 
-    // Adds a substack to the current state
-    public void addStack(Substack e) {
-        state.add(e);
+    // Sets the goal whose unsatisfied facts this state and every state derived from it count
+    public void useGoal(Goal goal) {
+        this.goal = goal;
+        this.unsatisfied = goal.unsatisfied(on);
+    }
+
+    // True when the state satisfies every fact of its goal; a single comparison, the count is kept up to date move by move
+    public boolean isGoal() {
+        return unsatisfied == 0;
+    }
+
+    // Turns the pruning of generateMoves on or off for this state and every state derived from it
+    public void usePruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    // Returns a copy with its own on[] array and the same goal, for searches that make and unmake moves on it
+    public State copy() {
+        State copy = new State(on.clone(), hash);
+        copy.goal = goal;
+        copy.unsatisfied = unsatisfied;
+        copy.pruning = pruning;
+        return copy;
+    }
+
+    // Returns the number of blocks in the state
+    public int size() {
+        return on.length;
+    }
+
+    // Returns the 64-bit Zobrist fingerprint of the state
+    public long fingerprint() {
+        return hash;
+    }
+
+    // Returns the block that the given block sits on, or TABLE
+    public int below(int block) {
+        return on[block];
     }
 
-    // Finds the largest substack in the current state (by size)
-    public Substack findLargestSubstack() {
-        Substack largestSubstack = this.getState().getFirst(); // Start with the first substack
-        for (Substack substack : this.getState()) {
-            if (substack.size() > largestSubstack.size()) {
-                largestSubstack = substack; // Update if a larger substack is found
+    /*
+    Rebuilds the towers of the state from the on[] array. Every tower is listed from the block on the
+    table up to its clear top block, so that it reads the same way the old Substack did.
+    This allocates, so it is only meant for output and for the heuristic, never for equality checks.
+    */
+    public List<int[]> getTowers() {
+        boolean[] covered = new boolean[on.length];
+        for (int below : on) {
+            if (below != TABLE) covered[below] = true;
+        }
+        List<int[]> towers = new ArrayList<>();
+        for (int top = 0; top < on.length; top++) {
+            if (covered[top]) continue; // Only start from clear blocks
+            int height = 0;
+            for (int b = top; b != TABLE; b = on[b]) height++;
+            int[] tower = new int[height];
+            for (int b = top, i = height - 1; b != TABLE; b = on[b], i--) tower[i] = b;
+            towers.add(tower);
+        }
+        return towers;
+    }
+
+    // Returns, for every block, its index in its tower counted from the table (0 = on the table)
+    public int[] getPositions() {
+        int[] positions = new int[on.length];
+        for (int[] tower : getTowers()) {
+            for (int i = 0; i < tower.length; i++) {
+                positions[tower[i]] = i;
             }
         }
-        return largestSubstack;
+        return positions;
     }
 
-    // Prints the current state's substacks
-    public void printState() {
-        for (Substack stack : state) {
-            System.out.println(stack);
+    // Prints the current state's towers, translating block ids back to names
+    public void printState(List<Block> blocks) {
+        for (int[] tower : getTowers()) {
+            System.out.println(towerToString(tower, blocks));
         }
         System.out.println();
     }
 
     // Prints the current state along with its heuristic cost
-    public void printState(State goalState, String algorithm) {
-        for (Substack stack : state) {
-            System.out.println(stack);
+    public void printState(Problem problem, String algorithm) {
+        for (int[] tower : getTowers()) {
+            System.out.println(towerToString(tower, problem.getBlocks()));
         }
-        int misplacedBlocks = Problem.Heuristic(this, goalState); // Calculate heuristic value
+        int misplacedBlocks = problem.Heuristic(this); // Calculate heuristic value
         if (algorithm.equals("best")) {
             System.out.println("Cost of node: " + misplacedBlocks);
         } else {
@@ -63,11 +126,13 @@ public class State implements Comparable<State> {
         System.out.println();
     }
 
-    // Removes empty substacks and returns the current state
-    public State filterState() {
-        List<Substack> state = this.getState();
-        state.removeIf(Substack::isEmpty);
-        return this;
+    // Formats a tower the same way the old Substack printed itself, e.g. [A, B, C]
+    private static String towerToString(int[] tower, List<Block> blocks) {
+        StringJoiner joiner = new StringJoiner(", ", "[", "]");
+        for (int block : tower) {
+            joiner.add(blocks.get(block).name());
+        }
+        return joiner.toString();
     }
 
     // Getters and setters for cost values
@@ -78,151 +143,190 @@ public class State implements Comparable<State> {
     public void setH(int h) { this.h = h; }
     public void setF(int f) { this.f = f; }
 
-    // Returns the list of substacks representing the state
-    public List<Substack> getState() { return state; }
+    // Returns the on[] array representing the state
+    public int[] getState() { return on; }
+
+    // Returns the moves worth trying from this state, which was reached by its recorded move; see generateMoves(int)
+    public List<Move> generateMoves() {
+        return generateMoves(move == null ? -1 : move.block());
+    }
 
     /*
-    Generates the child states for the current state using an uninformed search strategy (such as Breadth-First Search or Depth-First Search).
-    The method creates new states by moving blocks from one stack to another. The generated child states are not revisited, ensuring the
-    exploration of new configurations. The parent-child relationship is established for backtracking purposes, but no heuristic or path cost
-    is calculated, making it suitable for uninformed search approaches.
+    Returns the legal moves worth trying: a clear block onto the table or onto another clear block. A block on
+    the table is never moved onto the table again, which would not change the state. With pruning on, which is
+    the default, two more kinds of moves are left out before any child is built or looked up in a closed list:
+    - Moves of lastBlock, the block the move into this state moved. Moving it back undoes that move, and moving
+      it anywhere else could have been done by that move directly, so neither lies on a shortest plan.
+    - Moves of a well-placed block: one that satisfies its goal fact on top of blocks that satisfy theirs, down
+      to the table. Such a block never has to move again, so for a state with a goal this keeps
+      the searches that return shortest plans optimal. States without a goal, like the goal state the
+      backward half of bibreadth starts from, only leave out the moves of lastBlock.
 
     Parameters:
-    - visited: A set of already visited states to prevent generating duplicate states.
-
-    Returns:
-    - A list of child states, each with an established parent reference for backtracking.
+    - lastBlock: The block moved into this state, or -1 for the initial state. Searches that make and unmake
+      moves on a single state pass it, as the recorded move of that state does not follow them.
     */
-    public List<State> generateChildrenUninformed(Set<State> visited) {
-        State.filterChild(this); // Remove empty substacks and ensure at least one empty stack
-        List<State> children = new ArrayList<>();
-        for (int i = 0; i < state.size(); i++) {
-            Substack sourceStack = state.get(i);
-            if (sourceStack.isEmpty()) continue; // Skip empty stacks
-            Block topBlock = sourceStack.peek(); // Get the top block
-
-            // Try moving the top block to other stacks
-            for (int j = 0; j < state.size(); j++) {
-                if (i == j) continue; // Skip moving to the same stack
-                List<Substack> newStacks = deepCopyStacks(); // Create a copy of the stacks
-                newStacks.get(i).pop(); // Remove the block from the source stack
-                newStacks.get(j).push(topBlock); // Add the block to the target stack
-
-                State childState = new State(newStacks); // Create a new state
-                if (!visited.contains(childState)) {
-                    childState.setParent(this); // Set the parent for backtracking
-                    children.add(childState); // Add to the list of children
+    public List<Move> generateMoves(int lastBlock) {
+        List<Move> moves = new ArrayList<>();
+        int[] clear = clearBlocks();
+        for (int block : clear) {
+            if (isPruned(block, lastBlock)) {
+                continue;
+            }
+            if (on[block] != TABLE) {
+                moves.add(new Move(block, on[block], TABLE));
+            }
+            for (int target : clear) {
+                if (target != block) {
+                    moves.add(new Move(block, on[block], target));
                 }
             }
         }
-        return children;
+        return moves;
     }
 
-    // Ensures the state has a single empty stack (filter out extra empty stacks)
-    public static void filterChild(State s) {
-        List<Substack> state = s.getState();
-        state.removeIf(Substack::isEmpty);
-        state.add(new Substack());
+    /*
+    Finds the first move generateMoves(lastBlock) would return whose index is at least from, where moving block
+    onto target has the index block * (n + 1) + target + 1 (target is State.TABLE for the table). Returns -1
+    when there are no more moves. This lets a depth-first search keep a single int per frame instead of a list of moves.
+    */
+    public int nextMoveIndex(int from, int lastBlock) {
+        boolean[] covered = new boolean[on.length];
+        for (int below : on) {
+            if (below != TABLE) covered[below] = true;
+        }
+        int width = on.length + 1;
+        for (int index = from; index < on.length * width; index++) {
+            int block = index / width;
+            int target = index % width - 1;
+            if (covered[block] || isPruned(block, lastBlock)) {
+                index = block * width + on.length; // Skip the rest of this block's targets
+                continue;
+            }
+            if (target == block || target == on[block] || (target != TABLE && covered[target])) {
+                continue;
+            }
+            return index;
+        }
+        return -1;
     }
 
-    /*
-    Generates the child states for the current state using an informed search strategy (such as A*).
-    The method creates new states by moving blocks from one stack to another, calculating the heuristic
-    for each resulting state, and updating the path cost (g-value). The method ensures that the generated
-    states are not in the visited set to avoid revisiting states. It also computes the f-value (g + h) for each child.
+    // Returns the move with the given index, see nextMoveIndex
+    public Move moveAt(int index) {
+        int width = on.length + 1;
+        int block = index / width;
+        return new Move(block, on[block], index % width - 1);
+    }
 
-    Parameters:
-    - goal: The goal state used for calculating the heuristic.
-    - visited: A set of already visited states to prevent generating duplicate states.
+    // Returns the fingerprint the state would have after the move, without making it
+    public long fingerprintAfter(Move move) {
+        // Only the pair of the moved block changes, so the fingerprint is updated in O(1)
+        return hash ^ Zobrist.key(move.block(), move.from()) ^ Zobrist.key(move.block(), move.to());
+    }
 
-    Returns:
-    - A list of child states, each with updated g, h, and f values.
+    // Builds the child state reached by the move, with this state as its parent and one more step of path cost
+    public State applyMove(Move move) {
+        int[] newOn = on.clone();
+        newOn[move.block()] = move.to();
+        State child = new State(newOn, fingerprintAfter(move));
+        child.setParent(this); // Set the parent for backtracking
+        child.move = move; // Recorded so the plan can be written without comparing states
+        child.pruning = pruning;
+        if (goal != null) {
+            child.goal = goal;
+            child.unsatisfied = unsatisfied + goal.change(move);
+        }
+        child.setG(g + 1);
+        return child;
+    }
+
+    /*
+    Makes the move in place. This changes the state's equality and hash code, so it must only be used on
+    scratch states that are not stored in any set or map, and be paired with unmakeMove.
     */
-    public List<State> generateChildrenInformed(State goal, Set<State> visited) {
-        State.filterChild(this);
-        List<State> children = new ArrayList<>();
-        for (int i = 0; i < state.size(); i++) {
-            Substack sourceStack = state.get(i);
-            if (sourceStack.isEmpty()) continue;
-            Block topBlock = sourceStack.peek();
-
-            for (int j = 0; j < state.size(); j++) {
-                if (i == j) continue;
-                List<Substack> newStacks = deepCopyStacks();
-                newStacks.get(i).pop();
-                newStacks.get(j).push(topBlock);
-
-                State childState = new State(newStacks);
-                if (!visited.contains(childState)) {
-                    childState.setParent(this);
-                    childState.setH(Problem.Heuristic(childState, goal)); // Set heuristic value
-                    childState.setG(this.g + 1); // Increment path cost
-                    childState.setF(childState.getG() + childState.getH()); // Compute total cost
-                    children.add(childState);
-                }
+    public void makeMove(Move move) {
+        hash = fingerprintAfter(move);
+        on[move.block()] = move.to();
+        if (goal != null) {
+            unsatisfied += goal.change(move);
+        }
+    }
+
+    // Takes back a move made with makeMove
+    public void unmakeMove(Move move) {
+        hash = fingerprintAfter(move);
+        on[move.block()] = move.from();
+        if (goal != null) {
+            unsatisfied -= goal.change(move);
+        }
+    }
+
+    // True when pruning leaves out every move of the clear block, see generateMoves(int)
+    private boolean isPruned(int block, int lastBlock) {
+        if (!pruning) {
+            return false;
+        }
+        if (block == lastBlock) {
+            return true;
+        }
+        if (goal == null) {
+            return false;
+        }
+        for (int b = block; b != TABLE; b = on[b]) {
+            if (goal.below(b) != on[b]) {
+                return false; // A free block (Goal.ANY) is never well placed either
             }
         }
-        return children;
+        return true;
     }
 
-    // Creates a deep copy of the current stacks
-    private List<Substack> deepCopyStacks() {
-        List<Substack> copy = new ArrayList<>();
-        for (Substack stack : state) {
-            Substack newStack = new Substack();
-            for (Block block : stack.stack) {
-                newStack.push(block);
+    // Returns the ids of all blocks with nothing on top of them
+    private int[] clearBlocks() {
+        boolean[] covered = new boolean[on.length];
+        int count = on.length;
+        for (int below : on) {
+            if (below != TABLE && !covered[below]) {
+                covered[below] = true;
+                count--;
             }
-            copy.add(newStack);
         }
-        return copy;
+        int[] clear = new int[count];
+        for (int b = 0, i = 0; b < on.length; b++) {
+            if (!covered[b]) clear[i++] = b;
+        }
+        return clear;
     }
 
     // Comparator for priority queue (based on total cost `f`)
     @Override
     public int compareTo(State other) {
-        return Double.compare(this.f, other.f);
+        return Integer.compare(this.f, other.f);
     }
 
-    // Equality check based on normalized state
+    // Two states are equal when every block sits on the same thing; tower order no longer matters.
+    // Different fingerprints settle it at once, the arrays are only compared when the fingerprints collide.
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
 
         State otherState = (State) obj;
-        List<Substack> thisNormalized = normalizeState(this.state);
-        List<Substack> otherNormalized = normalizeState(otherState.state);
-
-        return thisNormalized.equals(otherNormalized);
+        return hash == otherState.hash && Arrays.equals(on, otherState.on);
     }
 
-    // Hash code computation based on normalized state
+    // Hash code folded from the 64-bit fingerprint
     @Override
     public int hashCode() {
-        return normalizeState(this.state).hashCode();
-    }
-
-    /*
-     Normalizes the given list of stacks by removing any empty stacks and sorting the remaining stacks.
-     The sorting is done based on the string representation of each stack, ensuring a consistent order for comparison
-     or further processing. This is useful for state comparisons or ensuring a canonical form of the state.
-
-     Parameters:
-     - stacks: The list of stacks to be normalized.
-
-     Returns:
-     - A new list of normalized stacks, with empty stacks removed and the remaining stacks sorted.
-     */
-    private List<Substack> normalizeState(List<Substack> stacks) {
-        List<Substack> normalized = new ArrayList<>(stacks);
-        normalized.removeIf(Substack::isEmpty);
-        normalized.sort(Comparator.comparing(Object::toString));
-        return normalized;
+        return Long.hashCode(hash);
     }
 
     // Returns the parent of the current state
     public State getParent() {
         return Parent;
     }
-}
\ No newline at end of file
+
+    // Returns the move that produced this state from its parent, or null
+    public Move getMove() {
+        return move;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+    A closed list that several threads can use at once.
+
+    The fingerprints are spread over a fixed number of ClosedSet stripes by their top bits, and each stripe
+    is guarded by its own lock, so two threads only wait for each other when they touch the same stripe.
+    Every stripe is a normal ClosedSet, so the memory per entry stays the same as in the sequential searches.
+*/
+public class StripedClosedSet {
+    private static final int STRIPE_BITS = 6;
+
+    private final ClosedSet[] stripes = new ClosedSet[1 << STRIPE_BITS];
+
+    public StripedClosedSet(boolean exact) {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ClosedSet(exact);
+        }
+    }
+
+    // Adds the state, returning false if it was already in the set
+    public boolean add(State s) {
+        ClosedSet stripe = stripeOf(s.fingerprint());
+        synchronized (stripe) {
+            return stripe.add(s);
+        }
+    }
+
+    // Checks whether the child reached from parent by move was added, without building the child
+    public boolean contains(State parent, Move move) {
+        ClosedSet stripe = stripeOf(parent.fingerprintAfter(move));
+        synchronized (stripe) {
+            return stripe.contains(parent, move);
+        }
+    }
+
+    // Returns the number of states in the set
+    public long size() {
+        long size = 0;
+        for (ClosedSet stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    // Returns the bytes held by all stripes
+    public long memoryBytes() {
+        long bytes = 0;
+        for (ClosedSet stripe : stripes) {
+            synchronized (stripe) {
+                bytes += stripe.memoryBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private ClosedSet stripeOf(long fingerprint) {
+        return stripes[(int) (fingerprint >>> (Long.SIZE - STRIPE_BITS))];
+    }
+}
@@ -0,0 +1,82 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/*
+    Sends what each thread prints to System.out to a log of its own.
+
+    Runs that share the JVM, such as batch jobs or the members of a portfolio, print their paths and
+    statistics through System.out like a single run does. Once installed, System.out forwards every write
+    to the log bound to the current thread, which the threads a run starts inherit, and to the console for
+    threads without a log.
+*/
+public final class ThreadLog {
+    private static final InheritableThreadLocal<PrintStream> LOG = new InheritableThreadLocal<>();
+    private static PrintStream console; // The original System.out while installed, otherwise null
+
+    private ThreadLog() {
+    }
+
+    // Replaces System.out with the forwarding stream; returns false if it was already installed
+    public static synchronized boolean install() {
+        if (console != null) {
+            return false;
+        }
+        console = System.out;
+        System.setOut(new PrintStream(new Forward(), true));
+        return true;
+    }
+
+    // Puts the original System.out back
+    public static synchronized void uninstall() {
+        if (console != null) {
+            System.setOut(console);
+            console = null;
+        }
+    }
+
+    // Returns the stream that reaches the console, also while the current thread has a log
+    public static synchronized PrintStream console() {
+        return console != null ? console : System.out;
+    }
+
+    // Sends the output of the current thread, and of the threads it starts from now on, to log
+    public static void bind(PrintStream log) {
+        LOG.set(log);
+    }
+
+    // Sends the output of the current thread back to where it went before it had a log of its own
+    public static void unbind(PrintStream previous) {
+        if (previous == null) {
+            LOG.remove();
+        } else {
+            LOG.set(previous);
+        }
+    }
+
+    // Returns the log of the current thread, or null
+    public static PrintStream current() {
+        return LOG.get();
+    }
+
+    private static final class Forward extends OutputStream {
+        private PrintStream target() {
+            PrintStream log = LOG.get();
+            return log != null ? log : console();
+        }
+
+        @Override
+        public void write(int b) {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            target().flush();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+    Zobrist keys for the (block, below) pairs of a state.
+
+    The fingerprint of a state is the XOR of key(i, on[i]) over all blocks i. XOR does not care about
+    order, so two states with the same blocks on the same things always get the same fingerprint, no
+    matter how their towers are listed. Moving block b from x onto y only changes one pair, so the new
+    fingerprint is old ^ key(b, x) ^ key(b, y), an O(1) update.
+
+    The classic scheme keeps a table of random numbers, but that table grows with the square of the
+    number of blocks. Here every key is derived on demand by running the pair through the SplitMix64
+    finalizer, which gives the same well mixed 64-bit values without storing anything.
+*/
+public final class Zobrist {
+
+    private Zobrist() {
+    }
+
+    // Returns the key for "block sits on below", where below may be State.TABLE
+    public static long key(int block, int below) {
+        long z = ((long) block << 32 | (below + 1) & 0xffffffffL) + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Computes the fingerprint of a whole on[] array from scratch
+    public static long hash(int[] on) {
+        long hash = 0;
+        for (int block = 0; block < on.length; block++) {
+            hash ^= key(block, on[block]);
+        }
+        return hash;
+    }
+}